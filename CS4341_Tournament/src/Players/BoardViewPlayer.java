@@ -0,0 +1,18 @@
+package Players;
+
+import Utilities.BoardView;
+import Utilities.Move;
+
+/**
+ * Implement this interface in your player class (which still has to
+ * extend Player) if you only need to read the board. The referee then
+ * calls this getMove with a read-only view of its own board instead of
+ * handing you a copy of the board, so asking for a move allocates nothing.
+ * Your getMove(StateTree) is not used by the referee anymore, it can
+ * simply return getMove(state.getView()).
+ */
+
+public interface BoardViewPlayer
+{
+	public Move getMove(BoardView view);
+}
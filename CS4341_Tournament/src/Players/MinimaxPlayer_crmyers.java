@@ -1,221 +1,153 @@
 package Players;
 
-import Referee.Referee;
-import Referee.RefereeBoard;
+import Utilities.Geometry;
 import Utilities.Move;
+import Utilities.PathHeuristic;
 import Utilities.StateTree;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Random;
 
 /**
  * Minimax player
  * @author Christopher Myers (crmyers@wpi.edu)
  */
-public class MinimaxPlayer_crmyers extends Player {
+public class MinimaxPlayer_crmyers extends Player implements ScoringPlayer, StatisticsPlayer {
 
 	/**
-	 * Helper fields for patching a bug in StateTree.
+	 * Search depth, in plies from the position before the move.
 	 */
 	private static int MAX_DEPTH = 9;
-	private static int LOST = Integer.MIN_VALUE + 1;
-	private static int WON = Integer.MAX_VALUE - 1;
-	private static int TIE = 0;
-
-	private static PrintStream nullPrintStream = new PrintStream(new OutputStream() {
-		@Override
-		public void write(int i) throws IOException {
-			// Does nothing, because we don't actually want to log anything.
-		}
-	});
+
+	/**
+	 * Move buffer for the fallback move, reused so getMove doesn't allocate.
+	 */
+	private int[] moveBuffer;
+	private final Random random = new Random();
+	private float lastScore = Float.NaN;
+	private SearchEngine.Result lastResult = null;
+	private final SearchStatistics statistics = new SearchStatistics();
+	private static double TIME_FRACTION = 0.8; // part of the move time the search may use
+
+	/**
+	 * Heuristic weights, tuned ones are read from WEIGHTS_FILE if it exists.
+	 */
+	private static String WEIGHTS_FILE = "weights/MinimaxPlayer_crmyers.txt";
+	public static final String[] DATA_FILES = { WEIGHTS_FILE }; // see Utilities.PlayerRegistry
+	private PathHeuristic heuristic = new PathHeuristic();
+	private int[][] pathCounts;
+	private final SearchEngine engine = new SearchEngine((state, player) -> (int) heuristic.evaluate(state, player, pathCounts));
 
 	public MinimaxPlayer_crmyers(String n, int t, int l) {
 		super(n, t, l);
 	}
 
 	@Override
-	public Move getMove(StateTree state) {
-		// One-level maxing implementation because for this specific case we need to return the right move to make
-		ArrayList<Move> moves = generateNewMoves(state, turn);
-
-		Move bestMove = moves.get(0);
-		int bestValue = Integer.MIN_VALUE;
-		for (Move move : moves) {
-			final StateTree newState = makeChildState(state, move);
-			final int value = minimax(newState, 2, Integer.MIN_VALUE, Integer.MAX_VALUE, turn == 1 ? 2 : 1);
-			if (value > bestValue) {
-				bestMove = move;
-				bestValue = value;
+	public void init(Geometry geometry) {
+		super.init(geometry);
+		final File weights = new File(WEIGHTS_FILE);
+		if (weights.exists()) {
+			try {
+				heuristic = PathHeuristic.load(weights);
+			} catch (IOException e) {
+				e.printStackTrace(); // keep the default weights
 			}
 		}
+	}
 
-		return bestMove;
+	@Override
+	public Move getMove(StateTree state) {
+		final long start = System.nanoTime();
+		prepareBuffers(state);
+
+		// Same depth as the old root loop plus minimax (MAX_DEPTH - 1 plies), but with principal variation search
+		final long deadline = start + (long) (getMoveTime() * 1e6 * TIME_FRACTION);
+		final SearchEngine.Result result = engine.search(state, MAX_DEPTH - 1, deadline);
+		recordStatistics(result);
+		if (result == null) {
+			final int[] moves = moveBuffer;
+			generateNewMoves(state, moves);
+			lastScore = Float.NaN;
+			return Move.of(moves[0]);
+		}
+		lastScore = result.score;
+		lastResult = result;
+		return Move.of(result.move);
 	}
 
 	/**
-	 * Recursive function for minimax
-	 * @param state State of the game at this node
-	 * @param depth Current depth
-	 * @param alpha Current alpha
-	 * @param beta Current beta
-	 * @param currentTurn Whose turn is it?
-	 * @return The value of this node.
+	 * Copies the counters of the search engine into statistics.
+	 * @param result Result of the search, may be null
 	 */
-	public int minimax(StateTree state, final int depth, int alpha, int beta, final int currentTurn) {
-		int shouldEnd = checkEnd(state);
-		if (shouldEnd == WON || shouldEnd == LOST || shouldEnd == TIE)
-			return shouldEnd;
-		if (depth == MAX_DEPTH)
-			return evaluate(state);
-
-		// Do the actual legwork of generating moves, mapping them into child states, and applying minimax to each
-		List<StateTree> newStates = generateNewMoves(state, currentTurn).stream()
-				.map(move -> makeChildState(state, move))
-				.collect(Collectors.toList());
-
-		int best = (turn == currentTurn ? Integer.MIN_VALUE : Integer.MAX_VALUE);
-		for (StateTree newState : newStates) {
-			int value = minimax(newState, depth + 1, alpha, beta, currentTurn == 1 ? 2 : 1);
-			if (turn == currentTurn) {
-				// Maximizing
-				best = Math.max(best, value);
-				alpha = Math.max(alpha, best);
-				if (alpha >= beta)
-					break; // prune
-			}
-			else {
-				// Minimizing
-				best = Math.min(best, value);
-				beta = Math.min(beta, best);
-				if (alpha >= beta)
-					break; // prune
-			}
+	private void recordStatistics(SearchEngine.Result result) {
+		statistics.clear();
+		statistics.nodes = engine.getNodes();
+		statistics.tableProbes = engine.getTableProbes();
+		statistics.tableHits = engine.getTableHits();
+		statistics.cutoffs = engine.getCutoffs();
+		statistics.firstMoveCutoffs = engine.getFirstMoveCutoffs();
+		if (result != null) {
+			statistics.setDepth(result.depth);
+			statistics.setPrincipalVariation(result.pv, result.pv.length);
 		}
-		return best;
 	}
 
-	/**
-	 * Determines whether this is an ending state or not.
-	 * @return WON if a win, LOST if a loss, TIE if a tie, 1 otherwise.
-	 */
-	private int checkEnd(StateTree state) {
-		final int result = Referee.checkForWinner(state);
-		if (result == 1 || result == 2)
-			return turn == result ? WON : LOST;
-		else if (result == 3)
-			return TIE;
-		return 1;
+	@Override
+	public SearchStatistics getSearchStatistics() {
+		return statistics;
 	}
 
 	/**
-	 * Evaluate the board state *relative to the current player*.
-	 * @return Board state evaluation
+	 * Principal variation of the last search, null before the first one.
+	 * @return Result of the last search
 	 */
-	private int evaluate(StateTree state) {
-		// This is pretty lightweight but it does the job. Basically, this just rewards both players for having
-		// a number of pieces in a row. Having more in-a-row groups is weighted higher, having longer lengths is
-		// weighted even higher. This does NOT account for diagonals, because diagonals are hard(er) and I ran
-		// out of time (MQP is fuuuun!)
-
-		int[][] pathCounts = new int[2][Math.max(state.rows, state.columns)];
-		for (int x = 0; x < state.rows; x++) {
-			int currentPlayer = state.getBoardMatrix()[x][0];
-			int count = 0;
-			for (int y = 0; y < state.columns; y++) {
-				if (state.getBoardMatrix()[x][y] == currentPlayer)
-					count++;
-				else {
-					if (currentPlayer != 0)
-						pathCounts[currentPlayer - 1][count] += 1;
-					currentPlayer = state.getBoardMatrix()[x][y];
-					count = 1;
-				}
-			}
-		}
-
-		for (int y = 0; y < state.columns; y++) {
-			int currentPlayer = state.getBoardMatrix()[0][y];
-			int count = 0;
-			for (int x = 0; x < state.rows; x++) {
-				// Duplicated code, ugh
-				if (state.getBoardMatrix()[x][y] == currentPlayer)
-					count++;
-				else {
-					if (currentPlayer != 0)
-						pathCounts[currentPlayer - 1][count] += 1;
-					currentPlayer = state.getBoardMatrix()[x][y];
-					count = 1;
-				}
-			}
-		}
-
-		// Calculate scores using the number of paths; longer paths are more heavily weighted
-		float[] scores = {0, 0};
-		for (int pathLength = 2; pathLength < state.winNumber + 1; pathLength++) {
-			for (int player = 0; player < 2; player++) {
-				final float pathCount = pathCounts[player][pathLength];
-				scores[player] += Math.pow(pathCount + 2, 2) * Math.pow(pathLength + 2, 3);
-			}
-		}
+	public SearchEngine.Result getLastResult() {
+		return lastResult;
+	}
 
-		return (int) (turn == 1 ? scores[0] - scores[1] : scores[1] - scores[0]);
+	@Override
+	public float getLastScore() {
+		return lastScore;
 	}
 
 	// ====== HELPERS ======
 
 	/**
-	 * Generate a list of new states that could be derived from the given state.
+	 * Generate the moves that can be made from the given state, in random order.
 	 * @param startingState Current state
-	 * @param player Which player is the one making the move
-	 * @return List of states
+	 * @param moves Buffer the moves are written into (as int moves, see Move)
+	 * @return Number of moves
 	 */
-	private ArrayList<Move> generateNewMoves(final StateTree startingState, final int player) {
-		final ArrayList<Move> moves = new ArrayList<>(startingState.columns);
-		final boolean canPop = !(player == 1 ? startingState.pop1 : startingState.pop2);
-		for (int i = 0; i < startingState.columns; i++) {
-			// Pop move, if applicable
-			if (canPop && startingState.getBoardMatrix()[0][i] == turn && startingState.getBoardMatrix()[startingState.rows - 1][i] == 0)
-				moves.add(new Move(true, i));
-
-			// Add move, if applicable
-			Move move = new Move(false, i);
-			if (startingState.getBoardMatrix()[startingState.rows-1][i] == 0)
-				moves.add(move);
+	private int generateNewMoves(final StateTree startingState, final int[] moves) {
+		final int moveCount = startingState.generateMoves(moves);
+
+		// Only keep pops from columns that aren't full, same as before
+		int kept = 0;
+		for (int i = 0; i < moveCount; i++) {
+			if (!Move.isPop(moves[i]) || startingState.canDrop(Move.column(moves[i])))
+				moves[kept++] = moves[i];
 		}
 
 		// Shuffling isn't strictly necessary, but it removes bias from the moves and generally makes the game more "interesting"
-		Collections.shuffle(moves);
-		return moves;
+		for (int i = kept - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int move = moves[i];
+			moves[i] = moves[j];
+			moves[j] = move;
+		}
+		return kept;
 	}
 
 	/**
-	 * Helper for making a child state.
-	 * @param state State to base off of
-	 * @param move Move to apply
-	 * @return New state based on previous, with move applied.
+	 * (Re)creates the move buffer and the heuristic's path counts if the board geometry changed.
+	 * @param state Any state of the current game
 	 */
-	private StateTree makeChildState(final StateTree state, Move move) {
-		final StateTree newState = new RefereeBoard(
-				state.rows,
-				state.columns,
-				state.winNumber,
-				state.turn,
-				state.pop1,
-				state.pop2,
-				state);
-
-		for (int x = 0; x < state.getBoardMatrix().length; x++) {
-			for (int y = 0; y < state.getBoardMatrix()[0].length; y++) {
-				newState.getBoardMatrix()[x][y] = state.getBoardMatrix()[x][y];
-			}
-		}
+	private void prepareBuffers(final StateTree state) {
+		if (moveBuffer != null && moveBuffer.length == 2 * state.columns
+				&& pathCounts[0].length == Math.max(state.rows, state.columns) + 1)
+			return;
 
-		// Patch the 'out' field to have a null print stream object that just discards any input.
-		newState.setOut(nullPrintStream);
-		newState.makeMove(move);
-		return newState;
+		moveBuffer = new int[2 * state.columns];
+		pathCounts = new int[2][Math.max(state.rows, state.columns) + 1];
 	}
 }
@@ -0,0 +1,485 @@
+package Players;
+
+import Referee.Referee;
+import Referee.RefereeBoard;
+import Utilities.Geometry;
+import Utilities.Move;
+import Utilities.StateTree;
+import Utilities.ThreatTracker;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo Tree Search player.
+ *
+ * Runs UCT search on every core until most of its time limit is used. Threads share one tree without
+ * locks: node statistics are atomic counters, a visit is counted as soon as a thread walks through a
+ * node (a "virtual loss", which pushes the other threads towards different lines) and its result is
+ * added on the way back. Nodes live in a preallocated array arena, the children of a node in one block.
+ *
+ * Playouts are random, except that a player always takes an immediate win and always blocks an
+ * immediate loss, both found with a ThreatTracker instead of full board checks.
+ *
+ * Between moves the subtree under the move that was actually played is kept, so the next search starts
+ * from everything the previous one learned about it. When the arena fills up, that subtree is copied
+ * into a spare arena. Arenas are sized in init from the move time and the board, and the search threads
+ * come from one pool shared by every instance.
+ */
+public class MonteCarloPlayer extends Player {
+
+	/**
+	 * Search parameters.
+	 */
+	private static int MAX_ARENA_CAPACITY = 1 << 20; // nodes per arena
+	private static int MIN_ARENA_CAPACITY = 1 << 12;
+	private static long PLAYOUT_RATE = 4000; // playouts per millisecond and thread, times the cells of the board (with room to spare)
+	private static double EXPLORATION = 1.41; // UCT exploration constant
+	private static double TIME_FRACTION = 0.75; // part of the move time we search for
+	private static long SAFETY_MARGIN = 100; // milliseconds left for the referee and the JVM
+
+	private static int WIN = 2; // scores are counted in half points
+	private static int DRAW = 1;
+
+	private static PrintStream nullPrintStream = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int i) throws IOException {
+			// Does nothing, because we don't actually want to log anything.
+		}
+	});
+
+	private static final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+	// Cached rather than fixed, so one instance's search never waits for another's to finish
+	private static final ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "MonteCarloPlayer-search");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Arena arena;
+	private Arena spareArena;
+	private volatile int root = -1;
+
+	// Root position of the current search, and the position after our last move (for tree reuse)
+	private StateTree rootBoard;
+	private ThreatTracker rootTracker;
+	private StateTree lastBoard;
+	private StateTree scratchBoard;
+	private final AtomicLong iterations = new AtomicLong();
+
+	public MonteCarloPlayer(String n, int t, int l) {
+		super(n, t, l);
+	}
+
+	@Override
+	public void init(Geometry geometry) {
+		super.init(geometry);
+		final int capacity = getArenaCapacity(geometry);
+		if (arena == null || arena.capacity != capacity) {
+			arena = new Arena(capacity);
+			spareArena = new Arena(capacity);
+		}
+		rootBoard = newBoard(geometry.rows, geometry.columns, geometry.winNumber);
+		lastBoard = newBoard(geometry.rows, geometry.columns, geometry.winNumber);
+		scratchBoard = newBoard(geometry.rows, geometry.columns, geometry.winNumber);
+		rootTracker = null;
+		root = -1;
+	}
+
+	@Override
+	public void newGame(int t) {
+		super.newGame(t);
+		root = -1;
+	}
+
+	@Override
+	public void close() {
+		arena = null;
+		spareArena = null;
+	}
+
+	/**
+	 * Nodes one move's search can use: every playout expands at most one node into 2 * columns children,
+	 * and a board with more cells has longer playouts.
+	 * @return Arena capacity
+	 */
+	private int getArenaCapacity(final Geometry geometry) {
+		final long cells = (long) geometry.rows * geometry.columns;
+		final long playouts = getMoveTime() * threads * PLAYOUT_RATE / cells;
+		final long nodes = playouts * 2 * geometry.columns;
+		return (int) Math.max(Math.max(MIN_ARENA_CAPACITY, 4L * geometry.columns), Math.min(MAX_ARENA_CAPACITY, nodes));
+	}
+
+	@Override
+	public Move getMove(StateTree state) {
+		final long start = System.currentTimeMillis();
+		if (rootBoard == null || rootBoard.rows != state.rows || rootBoard.columns != state.columns
+				|| rootBoard.winNumber != state.winNumber)
+			init(new Geometry(state.rows, state.columns, state.winNumber));
+
+		rootBoard.copyFrom(state);
+		rootTracker = new ThreatTracker(rootBoard);
+
+		// Take the win or the block without searching
+		final int[] winning = new int[state.columns];
+		if (rootTracker.getWinningMoves(state.turn, winning) > 0)
+			return rememberMove(-1, winning[0]);
+		final int block = rootTracker.getForcedBlock(state.turn);
+		if (block >= 0)
+			return rememberMove(-1, Move.encode(false, block));
+
+		reuseOrResetTree(state);
+
+		final long budget = getMoveTime();
+		final long deadline = start + Math.max(1, (long) (budget * TIME_FRACTION) - Math.min(SAFETY_MARGIN, budget / 4));
+		final List<Future<?>> futures = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++)
+			futures.add(pool.submit(() -> search(deadline)));
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+
+		// Play the most visited move
+		final int first = arena.firstChild[root];
+		final int count = arena.childCount[root];
+		if (first < 0 || count == 0) {
+			final int[] moves = new int[2 * state.columns];
+			state.generateMoves(moves);
+			return rememberMove(-1, moves[0]);
+		}
+		int best = first;
+		for (int child = first; child < first + count; child++) {
+			if (arena.visits.get(child) > arena.visits.get(best))
+				best = child;
+		}
+		return rememberMove(best, arena.move[best]);
+	}
+
+	/**
+	 * Number of playouts made since this player was created.
+	 * @return Playout count
+	 */
+	public long getIterations() {
+		return iterations.get();
+	}
+
+	// ====== SEARCH ======
+
+	/**
+	 * Runs search iterations on the shared tree until the deadline.
+	 * @param deadline Time to stop at, as System.currentTimeMillis()
+	 */
+	private void search(final long deadline) {
+		final StateTree board = newBoard(rootBoard.rows, rootBoard.columns, rootBoard.winNumber);
+		final ThreatTracker tracker = new ThreatTracker(board);
+		final int maxPath = rootBoard.rows * rootBoard.columns * 2 + 2;
+		final int[] path = new int[maxPath];
+		final int[] movers = new int[maxPath];
+		final int[] moves = new int[2 * rootBoard.columns];
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		int count = 0;
+		while ((count & 15) != 0 || System.currentTimeMillis() < deadline) {
+			tracker.copyFrom(rootTracker);
+			final Arena tree = arena;
+
+			// Selection and expansion
+			int node = root;
+			int length = 0;
+			int winner = 0;
+			tree.visits.incrementAndGet(node);
+			path[length] = node;
+			movers[length++] = 3 - board.turn;
+			while (winner == 0) {
+				if (tree.expanded.get(node) != 2 && !expand(tree, node, board, moves))
+					break;
+				final int child = select(tree, node);
+				if (child < 0)
+					break;
+				tree.visits.incrementAndGet(child); // virtual loss until the result is added
+				movers[length] = board.turn;
+				path[length++] = child;
+				winner = play(tracker, tree.move[child]);
+				node = child;
+				if (tree.visits.get(child) == 1)
+					break; // first visit, go to the playout
+			}
+
+			// Playout
+			if (winner == 0)
+				winner = playout(tracker, moves, random);
+
+			// Backpropagation
+			for (int i = 0; i < length; i++) {
+				if (winner == movers[i])
+					tree.score.addAndGet(path[i], WIN);
+				else if (winner == 3)
+					tree.score.addAndGet(path[i], DRAW);
+			}
+			count++;
+		}
+		iterations.addAndGet(count);
+	}
+
+	/**
+	 * Creates the children of a node, unless another thread is doing it or the arena is full.
+	 * @return True if the node has children now
+	 */
+	private boolean expand(final Arena tree, final int node, final StateTree board, final int[] moves) {
+		if (!tree.expanded.compareAndSet(node, 0, 1))
+			return tree.expanded.get(node) == 2;
+		final int count = board.generateMoves(moves);
+		final int first = tree.allocate(count);
+		if (count == 0 || first < 0) {
+			tree.expanded.set(node, 0); // try again later (another thread may compact the arena)
+			return false;
+		}
+		for (int i = 0; i < count; i++)
+			tree.move[first + i] = moves[i];
+		tree.childCount[node] = count;
+		tree.firstChild[node] = first;
+		tree.expanded.set(node, 2);
+		return true;
+	}
+
+	/**
+	 * Picks the child with the best UCT value (unvisited children first).
+	 * @return Child index, -1 if there are none
+	 */
+	private int select(final Arena tree, final int node) {
+		final int first = tree.firstChild[node];
+		final int count = tree.childCount[node];
+		final double logVisits = Math.log(Math.max(1, tree.visits.get(node)));
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int child = first; child < first + count; child++) {
+			final int visits = tree.visits.get(child);
+			if (visits == 0)
+				return child;
+			final double value = tree.score.get(child) / (double) (WIN * visits)
+					+ EXPLORATION * Math.sqrt(logVisits / visits);
+			if (value > bestValue) {
+				bestValue = value;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Plays random moves until the game ends, but always takes a win and blocks a loss.
+	 * @return Winner (1 or 2), 3 for a tie
+	 */
+	private int playout(final ThreatTracker tracker, final int[] moves, final ThreadLocalRandom random) {
+		final StateTree board = tracker.getBoard();
+		while (true) {
+			final int player = board.turn;
+			int move;
+			if (tracker.hasWinningMove(player)) {
+				tracker.getWinningMoves(player, moves);
+				move = moves[0];
+			}
+			else if (tracker.hasWinningMove(3 - player)) {
+				move = Move.encode(false, tracker.getForcedBlock(player));
+			}
+			else {
+				final int count = board.generateMoves(moves);
+				if (count == 0)
+					return 3;
+				move = moves[random.nextInt(count)];
+			}
+			final int winner = play(tracker, move);
+			if (winner != 0)
+				return winner;
+		}
+	}
+
+	/**
+	 * Makes a move and tells whether it ended the game.
+	 * @return Winner (1 or 2), 3 for a tie, 0 if the game goes on
+	 */
+	private int play(final ThreatTracker tracker, final int move) {
+		final StateTree board = tracker.getBoard();
+		final int player = board.turn;
+		final boolean wins = !Move.isPop(move) && tracker.isWinningDrop(player, Move.column(move));
+		tracker.makeMove(move);
+		if (wins)
+			return player;
+		if (Move.isPop(move))
+			return Referee.checkForWinner(board); // pieces of both players moved, check everything
+		return board.isFull() ? 3 : 0;
+	}
+
+	// ====== TREE REUSE ======
+
+	/**
+	 * Moves the root to the node for the current position if we searched it last time, otherwise
+	 * starts a new tree.
+	 */
+	private void reuseOrResetTree(final StateTree state) {
+		int newRoot = -1;
+		final int last = root;
+		if (last >= 0 && arena.expanded.get(last) == 2) {
+			final int first = arena.firstChild[last];
+			for (int child = first; child < first + arena.childCount[last] && newRoot < 0; child++) {
+				scratchBoard.copyFrom(lastBoard);
+				scratchBoard.makeMove(arena.move[child]);
+				if (samePosition(scratchBoard, state))
+					newRoot = child;
+			}
+		}
+
+		if (newRoot < 0) {
+			arena.reset();
+			newRoot = arena.allocate(1);
+		}
+		else if (arena.size() > arena.capacity / 2) {
+			// Keep only the subtree we need, in the spare arena
+			spareArena.reset();
+			newRoot = spareArena.copySubtree(arena, newRoot);
+			final Arena old = arena;
+			arena = spareArena;
+			spareArena = old;
+		}
+		root = newRoot;
+	}
+
+	/**
+	 * Remembers the position after our move so we can find it in the tree next time.
+	 * @param node Node of the move, -1 if it isn't in the tree
+	 * @param move Move we play
+	 * @return The move as a Move object
+	 */
+	private Move rememberMove(final int node, final int move) {
+		lastBoard.copyFrom(rootBoard);
+		lastBoard.makeMove(move);
+		root = node;
+		return Move.of(move);
+	}
+
+	private static boolean samePosition(final StateTree a, final StateTree b) {
+		if (a.turn != b.turn || a.pop1 != b.pop1 || a.pop2 != b.pop2 || a.getPieceCount() != b.getPieceCount())
+			return false;
+		for (int j = 0; j < a.columns; j++) {
+			if (a.getHeight(j) != b.getHeight(j))
+				return false;
+			for (int i = 0; i < a.getHeight(j); i++) {
+				if (a.getCell(i, j) != b.getCell(i, j))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static StateTree newBoard(final int rows, final int columns, final int winNumber) {
+		final StateTree board = new RefereeBoard(rows, columns, winNumber, 1, false, false, null);
+		board.setOut(nullPrintStream);
+		return board;
+	}
+
+	/**
+	 * Preallocated node storage. Children of a node are one block of consecutive nodes.
+	 */
+	private static class Arena {
+		final int capacity;
+		final int[] firstChild;
+		final int[] childCount;
+		final int[] move; // move leading to the node
+		final AtomicIntegerArray visits;
+		final AtomicIntegerArray score; // half points for the player who made the node's move
+		final AtomicIntegerArray expanded; // 0 - no children, 1 - being expanded, 2 - has children
+		final AtomicInteger next = new AtomicInteger();
+
+		Arena(final int capacity) {
+			this.capacity = capacity;
+			firstChild = new int[capacity];
+			childCount = new int[capacity];
+			move = new int[capacity];
+			visits = new AtomicIntegerArray(capacity);
+			score = new AtomicIntegerArray(capacity);
+			expanded = new AtomicIntegerArray(capacity);
+		}
+
+		int size() {
+			return Math.min(next.get(), capacity);
+		}
+
+		void reset() {
+			next.set(0);
+		}
+
+		/**
+		 * Reserves a block of fresh nodes.
+		 * @return Index of the first node, -1 if the arena is full
+		 */
+		int allocate(final int count) {
+			if (next.get() + count > capacity)
+				return -1; // don't let the counter run past the end while the arena stays full
+			final int first = next.getAndAdd(count);
+			if (first + count > capacity)
+				return -1;
+			for (int i = first; i < first + count; i++) {
+				firstChild[i] = -1;
+				childCount[i] = 0;
+				visits.set(i, 0);
+				score.set(i, 0);
+				expanded.set(i, 0);
+			}
+			return first;
+		}
+
+		/**
+		 * Copies a subtree of another arena into this one, breadth first.
+		 * @return Index of the copied root
+		 */
+		int copySubtree(final Arena source, final int sourceRoot) {
+			final int newRoot = allocate(1);
+			copyNode(source, sourceRoot, newRoot);
+			// Nodes are copied in breadth-first order, so this arena itself is the queue
+			for (int node = newRoot; node < size(); node++) {
+				final int sourceNode = firstChild[node]; // still points into the source arena
+				final int count = childCount[node];
+				if (expanded.get(node) != 2 || sourceNode < 0) {
+					firstChild[node] = -1;
+					childCount[node] = 0;
+					expanded.set(node, 0);
+					continue;
+				}
+				final int first = allocate(count);
+				if (first < 0) {
+					firstChild[node] = -1;
+					childCount[node] = 0;
+					expanded.set(node, 0);
+					next.set(capacity);
+					continue;
+				}
+				for (int i = 0; i < count; i++)
+					copyNode(source, sourceNode + i, first + i);
+				firstChild[node] = first;
+			}
+			return newRoot;
+		}
+
+		private void copyNode(final Arena source, final int from, final int to) {
+			firstChild[to] = source.firstChild[from];
+			childCount[to] = source.childCount[from];
+			move[to] = source.move[from];
+			visits.set(to, source.visits.get(from));
+			score.set(to, source.score.get(from));
+			expanded.set(to, source.expanded.get(from));
+		}
+	}
+}
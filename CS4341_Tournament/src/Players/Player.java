@@ -1,5 +1,6 @@
 package Players;
 
+import Utilities.Geometry;
 import Utilities.Move;
 import Utilities.StateTree;
 
@@ -9,6 +10,24 @@ import Utilities.StateTree;
  * The getMove function is probably where you want to do your min-maxing
  * and alpha-beta pruning, with helper functions and such.
  * 
+ * The tournament keeps one instance of your player for many games, so
+ * anything you build (transposition tables, opening books, precomputed
+ * tables) can survive from game to game. It calls init when the board
+ * geometry changes, newGame before every game and close when it is done
+ * with your player. Override them if you need to, but call the super
+ * method from newGame so your turn is updated.
+ * A player that times out or throws is not used again, the tournament
+ * closes it and its next game gets a new instance.
+ * 
+ * Games are played either with timeLimit seconds for every move or with
+ * a game clock (see Utilities.TimeControl). With a clock the referee calls
+ * setClock before every getMove, and you lose if your clock runs out.
+ * getMoveTime tells you how long you can sensibly think in both cases.
+ * 
+ * If your player reads files (weights, opening books), list them in a
+ * "public static final String[] DATA_FILES" field, so the tournament
+ * plays your battles again when one of them changes.
+ * 
  * @author Ethan Prihar
  *
  */
@@ -19,6 +38,10 @@ public abstract class Player
 	int turn; // the number corresponding to your turn (1 or 2)
 	int timeLimit; // the amount of time (in seconds) you have to make a move
 	int N; // the amount of pieces to connect in order to win
+	long timeRemaining = -1; // milliseconds left on your clock, -1 if there is no game clock
+	long timeIncrement = 0; // milliseconds added to your clock after each of your moves
+	long opponentTimeRemaining = -1; // milliseconds left on your opponent's clock
+	private static final int MOVES_TO_GO = 20; // getMoveTime plans as if this many moves were left
 	
 	public Player(String n, int t, int l)
 	{
@@ -35,6 +58,45 @@ public abstract class Player
 		return name;
 	}
 	
+	public void setTimeLimit(int l) {
+		timeLimit = l;
+	}
+	
+	// Called by the referee before every getMove when the game is played with a clock
+	public void setClock(long remaining, long increment, long opponentRemaining) {
+		timeRemaining = remaining;
+		timeIncrement = increment;
+		opponentTimeRemaining = opponentRemaining;
+	}
+	
+	public long getTimeRemaining() {
+		return timeRemaining;
+	}
+	
+	// Milliseconds to spend on this move: the time limit per move, or with a game clock
+	// a share of the remaining time plus most of the increment, never more than half of it
+	public long getMoveTime() {
+		if (timeRemaining < 0)
+			return timeLimit * 1000L;
+		return Math.min(timeRemaining / 2, timeRemaining / MOVES_TO_GO + timeIncrement * 3 / 4);
+	}
+	
+	// Called before the first game and whenever the board geometry changes
+	public void init(Geometry geometry) {
+		N = geometry.winNumber;
+	}
+	
+	// Called before every game with the number of your turn in that game (1 or 2)
+	public void newGame(int t) {
+		turn = t;
+		timeRemaining = -1;
+		opponentTimeRemaining = -1;
+	}
+	
+	// Called when the tournament doesn't need this player anymore
+	public void close() {
+	}
+	
 	
 	// This is the method the referee will call when it wants a move from your player
 	public abstract Move getMove(StateTree state);
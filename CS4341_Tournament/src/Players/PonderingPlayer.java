@@ -0,0 +1,34 @@
+package Players;
+
+import Utilities.Move;
+import Utilities.StateTree;
+
+/**
+ * Implement this interface in your player class if you want to keep
+ * searching while your opponent is thinking. It is optional, players
+ * that only extend Player keep working as before.
+ * 
+ * If the referee allows pondering it calls startPondering on a separate
+ * thread as soon as your opponent starts thinking. You can search for as
+ * long as you like there, but you have to return soon after stopPondering
+ * is called (from another thread), so use a volatile flag. After that the
+ * referee tells you which move your opponent made with opponentMoved,
+ * which is also called when pondering is not allowed.
+ * 
+ * Depending on the referee's policy the CPU time you spend pondering may be
+ * taken off the time you have for your next move, but never more than half
+ * of it. If you don't return from startPondering within the referee's
+ * ponderStopLimit, or throw from it, you lose the game.
+ */
+
+public interface PonderingPlayer
+{
+	// Called on the ponder thread with a copy of the board, the opponent is to move
+	public void startPondering(StateTree state);
+	
+	// Called when the opponent has returned its move, startPondering should return quickly after this
+	public void stopPondering();
+	
+	// Called after the opponent's move has been played on the referee's board
+	public void opponentMoved(Move move);
+}
@@ -0,0 +1,15 @@
+package Players;
+
+/**
+ * Implement this interface in your player class if your search ends up
+ * with a score for the position it was asked about. Tools that record
+ * games, like the self-play generator, store that score next to the
+ * position. It is optional and the referee does not use it.
+ */
+
+public interface ScoringPlayer
+{
+	// Score of the position of the last getMove call, from the point of view of
+	// the player to move, in whatever unit your evaluation uses. NaN if there is none.
+	public float getLastScore();
+}
@@ -0,0 +1,447 @@
+package Players;
+
+import Referee.Referee;
+import Referee.RefereeBoard;
+import Utilities.Move;
+import Utilities.StateTree;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Alpha-beta search engine for players, plug in your own evaluation.
+ *
+ * The search is negamax with principal variation search: the first move of a node is searched with the full
+ * window, the others with a null window that only proves they are worse, and they are searched again if that fails.
+ * Iterative deepening goes one ply deeper at a time, and from the third ply on starts every iteration with an
+ * aspiration window around the previous score, widening it when the score falls outside.
+ *
+ * Move ordering: the move from the transposition table (or the previous iteration's principal variation) first, then
+ * two killer moves per ply, then moves by history score, central columns first among equals. Root moves are shuffled
+ * before ordering so that equally good moves are picked at random.
+ *
+ * Win detection only looks at the lines through a dropped piece, unless a pop was played or lines are on the board
+ * already, then it falls back to Referee.checkForWinner.
+ */
+public class SearchEngine {
+
+	/**
+	 * Evaluation of a position for the given player, higher is better for that player. Should return the negated
+	 * value for the other player.
+	 */
+	public interface Evaluator {
+		int evaluate(StateTree state, int player);
+	}
+
+	/**
+	 * Outcome of a search.
+	 */
+	public static class Result {
+		public final int move; // best move, as an int move (see Move)
+		public final int score; // for the player to move, WIN - n means a win in n plies
+		public final int depth; // last completed depth
+		public final int[] pv; // principal variation, starting with move
+
+		Result(int move, int score, int depth, int[] pv) {
+			this.move = move;
+			this.score = score;
+			this.depth = depth;
+			this.pv = pv;
+		}
+	}
+
+	public static final int WIN = 1000000;
+	public static final int MAX_PLY = 64;
+	private static final int INFINITY = WIN + 1;
+	private static final int ASPIRATION_WINDOW = 64; // half width of the first aspiration window
+	private static final int TABLE_BITS = 18; // transposition table entries, as a power of two
+	private static final int HISTORY_LIMIT = Integer.MAX_VALUE / 128; // a player's history is halved past this, so order's score * 64 can't overflow
+	private static final int EXACT = 0, LOWER = 1, UPPER = 2;
+	private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}}; // {row step, column step}
+
+	private static PrintStream nullPrintStream = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int i) throws IOException {
+			// Does nothing, because we don't actually want to log anything.
+		}
+	});
+
+	private final Evaluator evaluator;
+	private final Random random = new Random();
+
+	// Per geometry, rebuilt by prepare
+	private int rows, columns, winNumber;
+	private StateTree[] boards; // boards[ply] is the position at that ply
+	private int[][] moves;
+	private int[][] orderScores;
+	private long[] keys; // Zobrist key of boards[ply]
+	private boolean[] lines; // true if boards[ply] has winNumber in a row anywhere
+	private long[] cellKeys; // [(column * rows + row) * 2 + player - 1]
+	private long baseKey, turnKey, pop1Key, pop2Key; // baseKey keeps the empty board's key away from 0 (empty slots)
+	private int[][] history; // [player - 1][move]
+
+	private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+	private final int[] pvLength = new int[MAX_PLY + 1];
+	private final int[][] killers = new int[MAX_PLY + 1][2];
+	private final long[] tableKeys = new long[1 << TABLE_BITS];
+	private final long[] tableData = new long[1 << TABLE_BITS]; // score, depth, bound and move of an entry
+
+	// Time control
+	private long deadline;
+	private boolean canAbort;
+	private boolean aborted;
+
+	// Statistics, since the start of the last search
+	private long nodes, tableProbes, tableHits, cutoffs, firstMoveCutoffs;
+
+	public SearchEngine(Evaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	/**
+	 * Searches the position by iterative deepening.
+	 * @param state Position to search, with the player to move in state.turn. Not changed.
+	 * @param maxDepth Deepest iteration, in plies (at most MAX_PLY)
+	 * @param deadline System.nanoTime() after which the search stops and returns the last completed iteration
+	 * @return The best move, its score and principal variation, null if there are no legal moves
+	 */
+	public Result search(StateTree state, int maxDepth, long deadline) {
+		prepare(state);
+		this.deadline = deadline;
+		nodes = tableProbes = tableHits = cutoffs = firstMoveCutoffs = 0;
+		canAbort = false;
+		aborted = false;
+		for (int[] plyKillers : killers)
+			plyKillers[0] = plyKillers[1] = -1;
+		for (int[] playerHistory : history)
+			Arrays.fill(playerHistory, 0);
+
+		boards[0].copyFrom(state);
+		keys[0] = fullKey(boards[0]);
+		lines[0] = hasLine(boards[0]);
+		if (boards[0].generateMoves(moves[0]) == 0)
+			return null;
+
+		Result result = null;
+		int score = 0;
+		for (int depth = 1; depth <= Math.min(maxDepth, MAX_PLY); depth++) {
+			int delta = ASPIRATION_WINDOW;
+			int alpha = (depth >= 3) ? Math.max(score - delta, -INFINITY) : -INFINITY;
+			int beta = (depth >= 3) ? Math.min(score + delta, INFINITY) : INFINITY;
+			int iterationScore;
+			while (true) {
+				iterationScore = search(0, depth, alpha, beta);
+				if (aborted)
+					break;
+				// Outside the window the score is only a bound, widen that side and search again
+				if (iterationScore <= alpha)
+					alpha = Math.max(alpha - delta, -INFINITY);
+				else if (iterationScore >= beta)
+					beta = Math.min(beta + delta, INFINITY);
+				else
+					break;
+				delta *= 4;
+			}
+			if (aborted)
+				break;
+			score = iterationScore;
+			if (pvLength[0] == 0)
+				break; // can't happen with a full window, but never return a result without a move
+			int[] line = new int[pvLength[0]];
+			System.arraycopy(pv[0], 0, line, 0, line.length);
+			result = new Result(line[0], score, depth, line);
+			canAbort = true; // one iteration is done, from now on we can stop any time
+			if (Math.abs(score) > WIN - MAX_PLY)
+				break; // the game is decided, deeper won't change that
+		}
+		return result;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getTableProbes() {
+		return tableProbes;
+	}
+
+	public long getTableHits() {
+		return tableHits;
+	}
+
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	public long getFirstMoveCutoffs() {
+		return firstMoveCutoffs;
+	}
+
+	// ====== SEARCH ======
+
+	/**
+	 * Principal variation search of boards[ply].
+	 * @return Score for the player to move
+	 */
+	private int search(final int ply, final int depth, int alpha, final int beta) {
+		nodes++;
+		if (canAbort && (nodes & 1023) == 0 && System.nanoTime() > deadline)
+			aborted = true;
+		if (aborted)
+			return 0;
+		pvLength[ply] = ply;
+		final StateTree board = boards[ply];
+		final int player = board.turn;
+		if (depth == 0 || ply == MAX_PLY)
+			return evaluator.evaluate(board, player);
+
+		// Transposition table
+		final boolean pvNode = beta - alpha > 1;
+		final long key = keys[ply];
+		final int slot = (int) (key >>> (64 - TABLE_BITS));
+		int tableMove = -1;
+		tableProbes++;
+		if (tableKeys[slot] == key) {
+			tableHits++;
+			final long data = tableData[slot];
+			tableMove = (int) (data >>> 40) & 0xFFFF;
+			final int entryDepth = (int) (data >>> 32) & 0xFF;
+			final int bound = (int) (data >>> 56) & 3;
+			final int entryScore = fromTable((int) data, ply);
+			if (!pvNode && entryDepth >= depth && (bound == EXACT
+					|| (bound == LOWER && entryScore >= beta) || (bound == UPPER && entryScore <= alpha)))
+				return entryScore;
+		}
+
+		final int[] plyMoves = moves[ply];
+		final int count = board.generateMoves(plyMoves);
+		if (count == 0)
+			return 0;
+		if (ply == 0)
+			shuffle(plyMoves, count);
+		order(ply, player, count, tableMove);
+
+		final int originalAlpha = alpha;
+		int best = -INFINITY;
+		int bestMove = plyMoves[0];
+		for (int i = 0; i < count; i++) {
+			final int move = plyMoves[i];
+			final int outcome = play(ply, move);
+			int score;
+			if (outcome != 0) {
+				pvLength[ply + 1] = ply + 1;
+				score = (outcome == 3) ? 0 : (outcome == player) ? WIN - (ply + 1) : -(WIN - (ply + 1));
+			}
+			else if (i == 0) {
+				score = -search(ply + 1, depth - 1, -beta, -alpha);
+			}
+			else {
+				// Prove the move is no better than what we have, search it properly only if it is
+				score = -search(ply + 1, depth - 1, -alpha - 1, -alpha);
+				if (score > alpha && score < beta)
+					score = -search(ply + 1, depth - 1, -beta, -alpha);
+			}
+			if (aborted)
+				return 0;
+
+			if (score > best) {
+				best = score;
+				bestMove = move;
+				if (score > alpha) {
+					alpha = score;
+					pv[ply][ply] = move;
+					System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, pvLength[ply + 1] - ply - 1);
+					pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+				}
+				if (alpha >= beta) {
+					cutoffs++;
+					if (i == 0)
+						firstMoveCutoffs++;
+					if (killers[ply][0] != move) {
+						killers[ply][1] = killers[ply][0];
+						killers[ply][0] = move;
+					}
+					if ((history[player - 1][move] += depth * depth) > HISTORY_LIMIT)
+						ageHistory(history[player - 1]);
+					break;
+				}
+			}
+		}
+
+		final int bound = (best <= originalAlpha) ? UPPER : (best >= beta) ? LOWER : EXACT;
+		tableKeys[slot] = key;
+		tableData[slot] = ((long) bound << 56) | ((long) (bestMove & 0xFFFF) << 40) | ((long) (depth & 0xFF) << 32)
+				| (toTable(best, ply) & 0xFFFFFFFFL);
+		return best;
+	}
+
+	/**
+	 * Makes a move from boards[ply] on boards[ply + 1].
+	 * @return Winner (1 or 2), 3 for a tie, 0 if the game goes on
+	 */
+	private int play(final int ply, final int move) {
+		final StateTree parent = boards[ply];
+		final StateTree child = boards[ply + 1];
+		final int player = parent.turn;
+		final int column = Move.column(move);
+		child.copyFrom(parent);
+		child.makeMove(move);
+
+		long key = keys[ply] ^ turnKey;
+		if (Move.isPop(move)) {
+			// The whole column moved down
+			for (int row = 0; row < parent.getHeight(column); row++)
+				key ^= cellKeys[(column * rows + row) * 2 + parent.getCell(row, column) - 1];
+			for (int row = 0; row < child.getHeight(column); row++)
+				key ^= cellKeys[(column * rows + row) * 2 + child.getCell(row, column) - 1];
+			key ^= (player == 1) ? pop1Key : pop2Key;
+			keys[ply + 1] = key;
+			final int winner = Referee.checkForWinner(child);
+			lines[ply + 1] = winner == 0 && hasLine(child);
+			return winner;
+		}
+		final int row = child.getHeight(column) - 1;
+		keys[ply + 1] = key ^ cellKeys[(column * rows + row) * 2 + player - 1];
+		lines[ply + 1] = lines[ply];
+		if (lines[ply])
+			return Referee.checkForWinner(child); // both players have lines already, count them
+		if (completesLine(child, row, column, player))
+			return player;
+		return child.isFull() ? 3 : 0;
+	}
+
+	// Halves every entry of a player's history, keeping their order
+	private static void ageHistory(final int[] playerHistory) {
+		for (int i = 0; i < playerHistory.length; i++)
+			playerHistory[i] >>= 1;
+	}
+
+	/**
+	 * Sorts the moves of a ply, best first (insertion sort, stable so shuffled ties stay shuffled).
+	 */
+	private void order(final int ply, final int player, final int count, final int tableMove) {
+		final int[] plyMoves = moves[ply];
+		final int[] scores = orderScores[ply];
+		for (int i = 0; i < count; i++) {
+			final int move = plyMoves[i];
+			int score;
+			if (move == tableMove)
+				score = Integer.MAX_VALUE;
+			else if (move == killers[ply][0])
+				score = Integer.MAX_VALUE - 1;
+			else if (move == killers[ply][1])
+				score = Integer.MAX_VALUE - 2;
+			else {
+				final int column = Move.column(move);
+				score = history[player - 1][move] * 64
+						+ columns - Math.abs(2 * column - columns + 1);
+			}
+			int j = i;
+			while (j > 0 && scores[j - 1] < score) {
+				scores[j] = scores[j - 1];
+				plyMoves[j] = plyMoves[j - 1];
+				j--;
+			}
+			scores[j] = score;
+			plyMoves[j] = move;
+		}
+	}
+
+	private void shuffle(final int[] plyMoves, final int count) {
+		for (int i = count - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int move = plyMoves[i];
+			plyMoves[i] = plyMoves[j];
+			plyMoves[j] = move;
+		}
+	}
+
+	// Win scores in the table are stored relative to the node, not the root
+	private static int toTable(final int score, final int ply) {
+		return (score > WIN - MAX_PLY * 2) ? score + ply : (score < -(WIN - MAX_PLY * 2)) ? score - ply : score;
+	}
+
+	private static int fromTable(final int score, final int ply) {
+		return (score > WIN - MAX_PLY * 2) ? score - ply : (score < -(WIN - MAX_PLY * 2)) ? score + ply : score;
+	}
+
+	// ====== BOARD HELPERS ======
+
+	/**
+	 * True if the piece in the given cell is part of winNumber of the player's pieces in a row.
+	 */
+	private boolean completesLine(final StateTree board, final int row, final int column, final int player) {
+		for (final int[] direction : DIRECTIONS) {
+			final int rowStep = direction[0];
+			final int columnStep = direction[1];
+			int count = 1;
+			for (int sign = -1; sign <= 1; sign += 2) {
+				int r = row + sign * rowStep;
+				int c = column + sign * columnStep;
+				while (count < winNumber && r >= 0 && r < rows && c >= 0 && c < columns && board.getCell(r, c) == player) {
+					count++;
+					r += sign * rowStep;
+					c += sign * columnStep;
+				}
+			}
+			if (count >= winNumber)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * True if any player has winNumber in a row somewhere on the board.
+	 */
+	private boolean hasLine(final StateTree board) {
+		for (int column = 0; column < columns; column++) {
+			for (int row = 0; row < board.getHeight(column); row++) {
+				if (completesLine(board, row, column, board.getCell(row, column)))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private long fullKey(final StateTree board) {
+		long key = baseKey ^ ((board.turn == 2) ? turnKey : 0);
+		key ^= board.pop1 ? pop1Key : 0;
+		key ^= board.pop2 ? pop2Key : 0;
+		for (int column = 0; column < columns; column++) {
+			for (int row = 0; row < board.getHeight(column); row++)
+				key ^= cellKeys[(column * rows + row) * 2 + board.getCell(row, column) - 1];
+		}
+		return key;
+	}
+
+	/**
+	 * (Re)creates the per-ply boards and buffers if the board geometry changed.
+	 */
+	private void prepare(final StateTree state) {
+		if (boards != null && rows == state.rows && columns == state.columns && winNumber == state.winNumber)
+			return;
+		rows = state.rows;
+		columns = state.columns;
+		winNumber = state.winNumber;
+		boards = new StateTree[MAX_PLY + 2];
+		for (int i = 0; i < boards.length; i++) {
+			boards[i] = new RefereeBoard(rows, columns, winNumber, 1, false, false, null);
+			boards[i].setOut(nullPrintStream);
+		}
+		moves = new int[MAX_PLY + 1][2 * columns];
+		orderScores = new int[MAX_PLY + 1][2 * columns];
+		keys = new long[MAX_PLY + 2];
+		lines = new boolean[MAX_PLY + 2];
+		history = new int[2][2 * columns];
+		final Random keyRandom = new Random(0x5EA4C4L);
+		cellKeys = new long[rows * columns * 2];
+		for (int i = 0; i < cellKeys.length; i++)
+			cellKeys[i] = keyRandom.nextLong();
+		baseKey = keyRandom.nextLong();
+		turnKey = keyRandom.nextLong();
+		pop1Key = keyRandom.nextLong();
+		pop2Key = keyRandom.nextLong();
+		Arrays.fill(tableKeys, 0);
+	}
+}
@@ -0,0 +1,166 @@
+package Players;
+
+import java.util.Locale;
+
+import Utilities.Move;
+
+/**
+ * This is what a search did for one move, or the sum of that over many
+ * moves. Players that implement StatisticsPlayer fill one in during
+ * getMove. The referee logs it next to the move and adds it to the totals
+ * of the game, and the tournament adds those up per player.
+ *
+ * Fill in the counters your search keeps and leave the others at 0. The
+ * referee sets moves and time itself. The principal variation is stored as
+ * int moves (see Move) and is only kept for single moves.
+ */
+
+public class SearchStatistics
+{
+	public int moves; // moves these statistics cover, set by the referee
+	public long depth; // depth reached, in plies, summed over the moves
+	public int maxDepth; // deepest depth reached in any of the moves
+	public long nodes; // positions searched
+	public long tableProbes; // transposition table lookups
+	public long tableHits; // lookups that found the position
+	public long cutoffs; // beta cutoffs
+	public long firstMoveCutoffs; // beta cutoffs caused by the first move searched
+	public long time; // milliseconds spent in getMove, set by the referee
+	private double branchingSum; // effective branching factors of the moves added so far
+	private int[] pv = new int[0];
+	private int pvLength = 0;
+
+	// Sets everything back to 0, call it at the start of every getMove
+	public void clear()
+	{
+		moves = 0;
+		depth = 0;
+		maxDepth = 0;
+		nodes = 0;
+		tableProbes = 0;
+		tableHits = 0;
+		cutoffs = 0;
+		firstMoveCutoffs = 0;
+		time = 0;
+		branchingSum = 0;
+		pvLength = 0;
+	}
+
+	// Sets the depth of a single search
+	public void setDepth(int d)
+	{
+		depth = d;
+		maxDepth = d;
+	}
+
+	// Copies the principal variation, as int moves, without allocating once the buffer is big enough
+	public void setPrincipalVariation(int[] line, int length)
+	{
+		if(pv.length < length)
+			pv = new int[length];
+		System.arraycopy(line, 0, pv, 0, length);
+		pvLength = length;
+	}
+
+	// Adds the statistics of other to these, the principal variation is not added
+	public void add(SearchStatistics other)
+	{
+		branchingSum += (other.moves == 1) ? other.getBranchingFactor() : other.branchingSum;
+		moves += other.moves;
+		depth += other.depth;
+		maxDepth = Math.max(maxDepth, other.maxDepth);
+		nodes += other.nodes;
+		tableProbes += other.tableProbes;
+		tableHits += other.tableHits;
+		cutoffs += other.cutoffs;
+		firstMoveCutoffs += other.firstMoveCutoffs;
+		time += other.time;
+	}
+
+	public double getAverageDepth()
+	{
+		return moves > 0 ? (double) depth / moves : 0.0;
+	}
+
+	// Nodes per second, 0 if no time was measured
+	public double getNodesPerSecond()
+	{
+		return time > 0 ? nodes * 1000.0 / time : 0.0;
+	}
+
+	public double getTableHitRate()
+	{
+		return tableProbes > 0 ? (double) tableHits / tableProbes : 0.0;
+	}
+
+	public double getFirstMoveCutoffRate()
+	{
+		return cutoffs > 0 ? (double) firstMoveCutoffs / cutoffs : 0.0;
+	}
+
+	// nodes^(1 / depth) for a single move, the average of that over the moves of a sum
+	public double getBranchingFactor()
+	{
+		if(moves != 1)
+			return moves > 0 ? branchingSum / moves : 0.0;
+		return (depth > 0 && nodes > 0) ? Math.pow(nodes, 1.0 / depth) : 0.0;
+	}
+
+	// The principal variation as columns, with a p in front of pops
+	public String getPrincipalVariation()
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<pvLength; i++)
+		{
+			if(i > 0)
+				sb.append(' ');
+			if(Move.isPop(pv[i]))
+				sb.append('p');
+			sb.append(Move.column(pv[i]));
+		}
+		return sb.toString();
+	}
+
+	// One line for a log, e.g. "depth 8, 10847 nodes (1203456 nodes/s), table hits 64.8%, ..."
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		if(moves == 1)
+			sb.append("depth ").append(depth);
+		else
+			sb.append(moves).append(" moves, depth ").append(String.format(Locale.US, "%.1f", getAverageDepth()))
+				.append(" (max ").append(maxDepth).append(')');
+		sb.append(String.format(Locale.US, ", %d nodes (%.0f nodes/s), table hits %.1f%%, first move cutoffs %.1f%%, branching factor %.2f",
+				nodes, getNodesPerSecond(), 100 * getTableHitRate(), 100 * getFirstMoveCutoffRate(), getBranchingFactor()));
+		if(pvLength > 0)
+			sb.append(", PV ").append(getPrincipalVariation());
+		return sb.toString();
+	}
+
+	// The counters as one word without spaces, read back by parse
+	public String encode()
+	{
+		return moves + ":" + depth + ":" + maxDepth + ":" + nodes + ":" + tableProbes + ":" + tableHits + ":"
+				+ cutoffs + ":" + firstMoveCutoffs + ":" + time + ":" + branchingSum;
+	}
+
+	public static SearchStatistics parse(String s)
+	{
+		String[] fields = s.split(":");
+		if(fields.length != 10)
+			throw new IllegalArgumentException("Malformed search statistics: " + s);
+		SearchStatistics statistics = new SearchStatistics();
+		statistics.moves = Integer.parseInt(fields[0]);
+		statistics.depth = Long.parseLong(fields[1]);
+		statistics.maxDepth = Integer.parseInt(fields[2]);
+		statistics.nodes = Long.parseLong(fields[3]);
+		statistics.tableProbes = Long.parseLong(fields[4]);
+		statistics.tableHits = Long.parseLong(fields[5]);
+		statistics.cutoffs = Long.parseLong(fields[6]);
+		statistics.firstMoveCutoffs = Long.parseLong(fields[7]);
+		statistics.time = Long.parseLong(fields[8]);
+		statistics.branchingSum = Double.parseDouble(fields[9]);
+		return statistics;
+	}
+}
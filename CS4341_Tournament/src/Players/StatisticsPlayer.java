@@ -0,0 +1,18 @@
+package Players;
+
+/**
+ * Implement this interface in your player class if you want the referee
+ * to log what your search did for every move: depth, nodes, nodes per
+ * second, transposition table hits, cutoffs, branching factor and the
+ * principal variation. The tournament also prints your totals at the end,
+ * per board geometry. It is optional and costs nothing if you don't.
+ * 
+ * Keep one SearchStatistics object, clear and fill it in during getMove
+ * and return it here, so reporting doesn't allocate anything.
+ */
+
+public interface StatisticsPlayer
+{
+	// Called right after getMove returned, null if there is nothing to report for that move
+	public SearchStatistics getSearchStatistics();
+}
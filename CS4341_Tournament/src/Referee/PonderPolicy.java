@@ -0,0 +1,15 @@
+package Referee;
+
+/**
+ * This tells the referee what to do with players that
+ * implement PonderingPlayer.
+ * DISABLED - players are never asked to ponder
+ * FREE - players ponder while their opponent thinks, for free
+ * CHARGED - players ponder, but the CPU time they spend doing it
+ *           is taken off the time they have for their next move
+ */
+
+public enum PonderPolicy
+{
+	DISABLED, FREE, CHARGED
+}
@@ -1,17 +1,32 @@
 package Referee;
 
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import Players.BoardViewPlayer;
 import Players.Player;
+import Players.PonderingPlayer;
+import Players.SearchStatistics;
+import Players.StatisticsPlayer;
+import Utilities.BoardStorage;
 import Utilities.Move;
+import Utilities.PackedStorage;
+import Utilities.SparseStorage;
 import Utilities.StateTree;
 import Utilities.StaticExceptionCounter;
+import Utilities.TimeControl;
 
 /**
  * This is the referee, it will manage the game and decide
@@ -29,6 +44,8 @@ public class Referee
 	private int boardColumns; // columns the board has
 	private int winNumber; // how many pieces you need in a row to win
 	private int timeLimit; // the time, in seconds, allowed for each player to provide a move
+	private TimeControl timeControl = null; // game clock used instead of timeLimit, null - timeLimit per move
+	private boolean popOut = true; // each player may pop out one of its own pieces once per game
 	private Player player1; // you should create your own player class and use it here
 	private Player player2;
 	public static int winNumberCrutch = 0;
@@ -36,8 +53,60 @@ public class Referee
 	private StateTree board;
 	Callable<Object> getPlayer1Move;
 	Callable<Object> getPlayer2Move;
-	private final ExecutorService service = Executors.newSingleThreadExecutor();
+	private ExecutorService service; // runs every getMove call, replaced when a player is abandoned on it
 	private PrintStream out = null;
+	private Move lastMove = null; // the move the current player has just returned
+	private volatile StateTree playerBoard = null; // the copy of the board the current player gets
+	private long sparseBoardThreshold = 1 << 16; // boards with more cells than this are stored sparsely
+	private boolean displayBoard = true;
+	private boolean packedBoards = false; // store boards with 2 bits per cell
+	
+	// Fast dispatch, for bots that answer in microseconds: players are called on the thread that runs
+	// the game, timed with System.nanoTime and stopped by the shared Watchdog. Nothing is allocated
+	// or logged per move, pondering is not offered.
+	private boolean fastDispatch = false;
+	private Watchdog.Slot watchdogSlot = null;
+	private final StateTree[] playerBoards = new StateTree[3]; // reused copies of the board, indexed by turn
+	private final int[] connectCount = new int[4]; // buffer for checkConnect
+	
+	// Told the thinking time of every move made in time and every game lost on time, e.g. by a tournament monitor
+	public interface MoveObserver
+	{
+		public void moveMade(String playerName, long nanoseconds);
+		
+		// gameClock - the player's clock ran out, otherwise it went over the time limit of one move
+		public void timeLost(String playerName, boolean gameClock);
+	}
+	private MoveObserver moveObserver = null;
+	
+	// Allocation budgets, enforced with the per-thread allocation counters of the JVM
+	private long moveAllocationLimit = 0; // bytes a player may allocate during one move, 0 - no limit
+	private long gameAllocationLimit = 0; // bytes a player may allocate during the whole game, 0 - no limit
+	private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+	private static final boolean allocationCountingSupported = threadBean != null;
+	private volatile Thread playerThread = null; // the thread every getMove call runs on
+	private final long[] allocatedBytes = new long[3]; // bytes allocated this game, indexed by turn
+	private static final long ALLOCATION_POLL_INTERVAL = 10000000L; // nanoseconds between two looks at a thinking player's allocations
+	private final long[] thinkingTime = new long[3]; // nanoseconds spent in getMove this game, indexed by turn
+	private volatile int movesMade = 0; // moves made this game by both players
+	private final boolean[] failed = new boolean[3]; // the player timed out, threw or broke a limit this game, indexed by turn
+	
+	// Pondering, see PonderingPlayer
+	private PonderPolicy ponderPolicy = PonderPolicy.DISABLED;
+	private long ponderStopLimit = 1000; // milliseconds a player has to return from startPondering once told to stop
+	private ExecutorService ponderService;
+	private volatile Thread ponderThread = null;
+	private Future<?> ponderFuture = null;
+	private long ponderStartCpuTime = 0;
+	private final long[] ponderCharge = new long[3]; // milliseconds taken off the next move, indexed by turn
+	private int ponderForfeit = 0; // turn of a player that didn't stop pondering in time or threw, 0 - none
+	
+	// Game clocks, see TimeControl
+	private final long[] clocks = new long[3]; // nanoseconds left on each clock, indexed by turn
+	private boolean drawnOnTime = false; // a player ran out of time, but its opponent couldn't win anymore
+	
+	// Search statistics of players that report them, see StatisticsPlayer
+	private final SearchStatistics[] searchStatistics = { null, new SearchStatistics(), new SearchStatistics() }; // totals this game, indexed by turn
 	
 	public PrintStream getOut() {
 		return out;
@@ -63,6 +132,50 @@ public class Referee
 		this.setPlayer1(null);
 		this.setPlayer2(null);
 		out = System.out;
+		service = newPlayerService();
+		ponderService = newPonderService();
+	}
+	
+	private ExecutorService newPlayerService()
+	{
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "referee-player");
+				thread.setDaemon(true);
+				playerThread = thread;
+				return thread;
+			}
+		});
+		executor.prestartAllCoreThreads();
+		return executor;
+	}
+	
+	private ExecutorService newPonderService()
+	{
+		ThreadPoolExecutor ponderExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, 
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "referee-ponder");
+				thread.setDaemon(true);
+				ponderThread = thread;
+				return thread;
+			}
+		});
+		ponderExecutor.prestartAllCoreThreads();
+		return ponderExecutor;
+	}
+	
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported())
+			return null;
+		if (!sunBean.isThreadAllocatedMemoryEnabled())
+			sunBean.setThreadAllocatedMemoryEnabled(true);
+		return sunBean;
 	}
 	
 	public void initMatch(int boardRows, int boardColumns, int winNumber, int timeLimit, Player player1, Player player2) {
@@ -76,13 +189,13 @@ public class Referee
 		
 		getPlayer1Move = new Callable<Object>() {
 			   public Object call() {
-			      return getPlayer1().getMove(board);
+			      return askForMove(getPlayer1());
 			   }
 			};
 			
 		getPlayer2Move = new Callable<Object>() {
 			 	public Object call() {
-				  return getPlayer2().getMove(board);
+				  return askForMove(getPlayer2());
 			 	}
 			};
 	}
@@ -90,8 +203,54 @@ public class Referee
 	
 	public int judge() {
 		// Make the board and initialize variables
-		board = new RefereeBoard(getBoardRows(), getBoardColumns(), getWinNumber(), 1, false, false, null);
+		BoardStorage storage = null;
+		// Huge boards are stored sparsely and not printed after every move, the move log is enough
+		displayBoard = (long) getBoardRows() * getBoardColumns() <= sparseBoardThreshold;
+		if (!displayBoard)
+			storage = new SparseStorage(getBoardRows(), getBoardColumns());
+		else if (packedBoards)
+			storage = new PackedStorage(getBoardRows(), getBoardColumns());
+		// Without pop outs both players start as if they had used theirs
+		board = new RefereeBoard(getBoardRows(), getBoardColumns(), getWinNumber(), 1, !popOut, !popOut, null, storage);
 		board.setOut(out);
+		Arrays.fill(allocatedBytes, 0);
+		Arrays.fill(thinkingTime, 0);
+		Arrays.fill(ponderCharge, 0);
+		ponderForfeit = 0;
+		movesMade = 0;
+		Arrays.fill(failed, false);
+		if (timeControl != null)
+			clocks[1] = clocks[2] = timeControl.initial * 1000000L;
+		drawnOnTime = false;
+		searchStatistics[1].clear();
+		searchStatistics[2].clear();
+		
+		int result;
+		if (fastDispatch) {
+			watchdogSlot = Watchdog.register();
+			try {
+				result = playGame();
+			}
+			finally {
+				Watchdog.unregister(watchdogSlot);
+				watchdogSlot = null;
+			}
+		}
+		else
+			result = playGame();
+		reportAllocations(player1, 1);
+		reportAllocations(player2, 2);
+		reportSearchTotals(player1, 1);
+		reportSearchTotals(player2, 2);
+		if (timeControl != null)
+		{
+			out.println(player1.getName() + " has " + clocks[1] / 1e9 + " seconds left on the clock.");
+			out.println(player2.getName() + " has " + clocks[2] / 1e9 + " seconds left on the clock.");
+		}
+		return result;
+	}
+	
+	private int playGame() {
 		Move move = null;
 		int winner = 0;
 		// This while loop runs until there is a winner
@@ -100,42 +259,18 @@ public class Referee
 		out.println(player1.getName());
 		out.println(player2.getName());
 		
-		long startTime = -1;
-		long stopTime = -1;
-		
 		while(winner == 0)
 		{
 			if(board.turn == 1) // Player 1's turn
 			{
-				out.println(player1.getName() + "'s turn:");
-				Future<Object> future = null;
-				try {
-					future = service.submit(getPlayer1Move);
-					startTime = System.currentTimeMillis();
-					move = (Move) future.get(timeLimit, TimeUnit.SECONDS);
-				}
-				catch (TimeoutException e)
-		        {
-					future.cancel(true);
-					out.println(player1.getName() + " failed with timeout");
-					out.println(player2.getName() + " wins!");
-					StaticExceptionCounter.addException(player1.getName());
-					return 2;
-		        }
-				catch (Exception e) {
-					future.cancel(true);
-					e.printStackTrace(out);
-					out.println(player1.getName() + " failed with exception");
-					out.println(player2.getName() + " wins!");
-					StaticExceptionCounter.addException(player1.getName());
-					return 2;
+				if(!requestMove(player1, player2, getPlayer1Move))
+					return drawnOnTime ? 0 : 2;
+				if(ponderForfeit != 0)
+				{
+					out.println(player1.getName() +" wins.");
+					return 1;
 				}
-				finally {
-					future.cancel(true);
-					stopTime = System.currentTimeMillis();
-					double timePassed = (double)(stopTime - startTime) / 1000.0;
-					out.println(player1.getName() + " took " + timePassed + " seconds to move.");
-				}				
+				move = lastMove;
 				/*System.setOut(new PrintStream(new OutputStream() {
 				    @Override public void write(int b) throws IOException {}
 				}));*/
@@ -146,46 +281,18 @@ public class Referee
 					return 2;				
 				}
 				//System.setOut(out);
-				String action;
-				if(move.getPop())
-					action = " popped a piece from column ";
-				else
-					action = " placed a piece in column ";
-				out.println(player1.getName() + action + move.getColumn() + ".");
+				logMove(player1, move);
 			}
 			else if(board.turn == 2) // Player 2's turn
 			{
-				out.println(player2.getName() + "'s turn:");
-				startTime = System.currentTimeMillis();
-				Future<Object> future = null;
-				try {
-					future = service.submit(getPlayer2Move);
-					move = (Move) future.get(timeLimit, TimeUnit.SECONDS);
-				}
-				catch (TimeoutException e)
-		        {
-					future.cancel(true);
-					out.println(player2.getName() + " failed with timeout");
-					out.println(player1.getName() + " wins!");
-					StaticExceptionCounter.addException(player2.getName());
-					return 1;
-		        }
-				catch (Exception e) {
-					future.cancel(true);
-					e.printStackTrace(out);
-					out.println(player2.getName() + " failed with exception");
-					out.println(player1.getName() + " wins!");
-					StaticExceptionCounter.addException(player2.getName());
-					return 1;
-				}
-				finally {
-					future.cancel(true);
-					stopTime = System.currentTimeMillis();
-					double timePassed = (double)(stopTime - startTime) / 1000.0;
-					out.println(player1.getName() + " took " + timePassed + " seconds to move.");
-					out.println(player2.getName() + " took " + timePassed + " seconds to move.");
+				if(!requestMove(player2, player1, getPlayer2Move))
+					return drawnOnTime ? 0 : 1;
+				if(ponderForfeit != 0)
+				{
+					out.println(player2.getName() +" wins.");
+					return 2;
 				}
-				
+				move = lastMove;
 				/*System.setOut(new PrintStream(new OutputStream() {
 				    @Override public void write(int b) throws IOException {}
 				}));*/
@@ -196,20 +303,21 @@ public class Referee
 					return 1;
 				}
 				//System.setOut(out);
-				String action;
-				if(move.getPop())
-					action = " popped a piece from column ";
-				else
-					action = " placed a piece in column ";
-				out.println(player2.getName() + action + move.getColumn() + ".");
+				logMove(player2, move);
 			}
 			board.makeMove(move); // Makes the move after checking if it was valid
-			board.display(); // Prints the board
-			winner = checkForWinner(board); // Checks to see if anybody has won
-			long currentFreeMemory = Runtime.getRuntime().freeMemory();
-			if (currentFreeMemory < 0.07*initialFreeMemory) {
-				out.println("Low memory! Cannot continue fight");
-				return 0;
+			++movesMade;
+			notifyOpponentMoved(board.turn == 1 ? player1 : player2, move);
+			if (displayBoard && !fastDispatch)
+				board.display(); // Prints the board
+			winner = checkForWinner(board, connectCount); // Checks to see if anybody has won
+			// Without per-thread allocation counters fall back to watching the whole heap
+			if (!allocationCountingSupported) {
+				long currentFreeMemory = Runtime.getRuntime().freeMemory();
+				if (currentFreeMemory < 0.07*initialFreeMemory) {
+					out.println("Low memory! Cannot continue fight");
+					return 0;
+				}
 			}
 		}
 		switch(winner) // Displays appropriate win messages
@@ -225,10 +333,454 @@ public class Referee
 		return 0;
 	}
 	
+	// Asks the player whose turn it is for a move and stores it in lastMove.
+	// Returns false if the player forfeits the game by timing out, throwing
+	// an exception or going over its allocation budget.
+	private boolean requestMove(Player player, Player opponent, Callable<Object> getMove)
+	{
+		if (fastDispatch)
+			return requestMoveFast(player, opponent);
+		out.println(player.getName() + "'s turn:");
+		lastMove = null;
+		if (ponderCharge[board.turn] > 0)
+			out.println(player.getName() + " is charged " + ponderCharge[board.turn] / 1000.0 + " seconds for pondering.");
+		long moveTimeLimit = startClock();
+		startPondering(opponent);
+		// Players that can't take a read-only view get their own copy, so they can't corrupt the game
+		playerBoard = (player instanceof BoardViewPlayer) ? null : refreshPlayerBoard();
+		Future<Object> future = null;
+		long startAllocated = getPlayerThreadAllocatedBytes();
+		long startTime = System.nanoTime();
+		long elapsed = 0;
+		try {
+			future = service.submit(getMove);
+			if (!awaitMove(future, moveTimeLimit, startTime, startAllocated)) {
+				long moveAllocated = getPlayerThreadAllocatedBytes() - startAllocated;
+				abandonPlayerThread();
+				return checkAllocations(player, opponent, moveAllocated);
+			}
+		}
+		catch (TimeoutException e)
+		{
+			abandonPlayerThread();
+			return loseOnTime(player, opponent);
+		}
+		catch (Exception e) {
+			e.printStackTrace(out);
+			out.println(player.getName() + " failed with exception");
+			out.println(opponent.getName() + " wins!");
+			StaticExceptionCounter.addException(player.getName());
+			failed[board.turn] = true;
+			return false;
+		}
+		finally {
+			if (future != null)
+				future.cancel(true);
+			long stopTime = System.nanoTime();
+			stopPondering(opponent, board.turn == 1 ? 2 : 1);
+			elapsed = stopTime - startTime;
+			thinkingTime[board.turn] += elapsed;
+			double timePassed = (double)(stopTime - startTime) / 1e9;
+			out.println(player.getName() + " took " + timePassed + " seconds to move.");
+		}
+		stopClock(elapsed);
+		observeMove(player, elapsed);
+		if (timeControl != null)
+			out.println(player.getName() + " has " + clocks[board.turn] / 1e9 + " seconds left on the clock.");
+		reportSearchStatistics(player, elapsed / 1000000L);
+		
+		if (!allocationCountingSupported)
+			return true;
+		return checkAllocations(player, opponent, getPlayerThreadAllocatedBytes() - startAllocated);
+	}
+	
+	// Same as requestMove, but calls the player on this thread (see fastDispatch)
+	private boolean requestMoveFast(Player player, Player opponent)
+	{
+		lastMove = null;
+		long moveTimeLimit = startClock();
+		if (!(player instanceof BoardViewPlayer))
+			playerBoard = refreshPlayerBoard();
+		long startAllocated = getCurrentThreadAllocatedBytes();
+		long startTime = System.nanoTime();
+		long stopTime;
+		watchdogSlot.start(startTime + moveTimeLimit);
+		try {
+			lastMove = askForMove(player);
+		}
+		catch (Throwable e) { // the executor turns anything a player throws into a forfeit, so do we
+			e.printStackTrace(out);
+			out.println(player.getName() + " failed with exception");
+			out.println(opponent.getName() + " wins!");
+			StaticExceptionCounter.addException(player.getName());
+			failed[board.turn] = true;
+			return false;
+		}
+		finally {
+			stopTime = System.nanoTime();
+			watchdogSlot.stop();
+			thinkingTime[board.turn] += stopTime - startTime;
+		}
+		if (stopTime - startTime > moveTimeLimit)
+			return loseOnTime(player, opponent);
+		stopClock(stopTime - startTime);
+		observeMove(player, stopTime - startTime);
+		reportSearchStatistics(player, (stopTime - startTime) / 1000000L);
+		
+		if (!allocationCountingSupported)
+			return true;
+		return checkAllocations(player, opponent, getCurrentThreadAllocatedBytes() - startAllocated);
+	}
+	
+	private void observeMove(Player player, long elapsed)
+	{
+		if (moveObserver != null)
+			moveObserver.moveMade(player.getName(), elapsed);
+	}
+	
+	// Takes the pondering charge off the player to move and returns the nanoseconds it has for its move.
+	// The charge takes at most half of the time, pondering alone can't make a player lose on time.
+	private long startClock()
+	{
+		long charge = ponderCharge[board.turn] * 1000000L;
+		ponderCharge[board.turn] = 0;
+		if (timeControl == null)
+			return timeLimit * 1000000000L - Math.min(charge, timeLimit * 1000000000L / 2);
+		clocks[board.turn] -= Math.min(charge, clocks[board.turn] / 2);
+		return clocks[board.turn];
+	}
+	
+	// Takes the time of a move that was in time off the clock and adds the increment
+	private void stopClock(long elapsed)
+	{
+		if (timeControl != null)
+			clocks[board.turn] = Math.max(0, clocks[board.turn] - elapsed) + timeControl.increment * 1000000L;
+	}
+	
+	// The player to move ran out of time. With a game clock that is a loss, unless
+	// the opponent can't connect anymore, which makes it a tie (see drawnOnTime).
+	// Always returns false, the game is over.
+	private boolean loseOnTime(Player player, Player opponent)
+	{
+		failed[board.turn] = true;
+		if (timeControl == null)
+		{
+			out.println(player.getName() + " failed with timeout");
+			out.println(opponent.getName() + " wins!");
+			StaticExceptionCounter.addException(player.getName());
+			if (moveObserver != null)
+				moveObserver.timeLost(player.getName(), false);
+			return false;
+		}
+		clocks[board.turn] = 0;
+		out.println(player.getName() + " ran out of time.");
+		if (canStillConnect(board, board.turn == 1 ? 2 : 1))
+		{
+			out.println(opponent.getName() + " wins!");
+			if (moveObserver != null)
+				moveObserver.timeLost(player.getName(), true);
+		}
+		else
+		{
+			out.println(opponent.getName() + " can't connect " + board.winNumber + " anymore, the game is a tie.");
+			drawnOnTime = true;
+		}
+		return false;
+	}
+	
+	// Whether the given player could still get winNumber in a row by some series of moves.
+	// While a pop is left pieces can still move, so that is always possible. Otherwise the
+	// player needs a line of winNumber cells without a piece of its opponent.
+	public static boolean canStillConnect(StateTree board, int player)
+	{
+		if (!board.pop1 || !board.pop2)
+			return true;
+		int opponent = (player == 1) ? 2 : 1;
+		int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { -1, 1 } };
+		for(int i=0; i<board.rows; i++)
+		{
+			for(int j=0; j<board.columns; j++)
+			{
+				for(int[] d : directions)
+				{
+					int endRow = i + d[0] * (board.winNumber - 1);
+					int endColumn = j + d[1] * (board.winNumber - 1);
+					if(endRow < 0 || endRow >= board.rows || endColumn >= board.columns)
+						continue;
+					int x = 0;
+					while(x < board.winNumber && board.getCell(i + d[0] * x, j + d[1] * x) != opponent)
+						x++;
+					if(x == board.winNumber)
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	// Waits for the move of the player on the executor and stores it in lastMove. With an
+	// allocation budget the player thread's counter is read every ALLOCATION_POLL_INTERVAL,
+	// and false is returned as soon as the move is over budget, without waiting for it.
+	private boolean awaitMove(Future<Object> future, long moveTimeLimit, long startTime, long startAllocated)
+			throws InterruptedException, ExecutionException, TimeoutException
+	{
+		if (!allocationCountingSupported || (moveAllocationLimit <= 0 && gameAllocationLimit <= 0))
+		{
+			lastMove = (Move) future.get(Math.max(moveTimeLimit, 0), TimeUnit.NANOSECONDS);
+			return true;
+		}
+		while (true)
+		{
+			long remaining = moveTimeLimit - (System.nanoTime() - startTime);
+			try {
+				lastMove = (Move) future.get(Math.max(Math.min(remaining, ALLOCATION_POLL_INTERVAL), 0), TimeUnit.NANOSECONDS);
+				return true;
+			}
+			catch (TimeoutException e) {
+				if (remaining <= ALLOCATION_POLL_INTERVAL)
+					throw e;
+				if (isOverBudget(getPlayerThreadAllocatedBytes() - startAllocated))
+					return false;
+			}
+		}
+	}
+	
+	private boolean isOverBudget(long moveAllocated)
+	{
+		return (moveAllocationLimit > 0 && moveAllocated > moveAllocationLimit)
+				|| (gameAllocationLimit > 0 && allocatedBytes[board.turn] + moveAllocated > gameAllocationLimit);
+	}
+	
+	// Adds the bytes a player allocated during its move to its total, returns false if that was over budget
+	private boolean checkAllocations(Player player, Player opponent, long moveAllocated)
+	{
+		allocatedBytes[board.turn] += moveAllocated;
+		if (moveAllocationLimit > 0 && moveAllocated > moveAllocationLimit)
+		{
+			out.println(player.getName() + " allocated " + moveAllocated + " bytes in one move, the limit is " + moveAllocationLimit);
+			out.println(opponent.getName() + " wins!");
+			StaticExceptionCounter.addException(player.getName());
+			failed[board.turn] = true;
+			return false;
+		}
+		if (gameAllocationLimit > 0 && allocatedBytes[board.turn] > gameAllocationLimit)
+		{
+			out.println(player.getName() + " allocated " + allocatedBytes[board.turn] + " bytes this game, the limit is " + gameAllocationLimit);
+			out.println(opponent.getName() + " wins!");
+			StaticExceptionCounter.addException(player.getName());
+			failed[board.turn] = true;
+			return false;
+		}
+		return true;
+	}
+	
+	// The player to move is still thinking after it timed out or went over its budget and may
+	// ignore being cancelled. Its thread is abandoned with its board copy, so the next move
+	// doesn't queue behind it and its allocations aren't charged to the next player. The
+	// tournament doesn't use this player instance again (see hasFailed).
+	private void abandonPlayerThread()
+	{
+		playerBoards[board.turn] = null;
+		service.shutdownNow();
+		playerThread = null;
+		service = newPlayerService();
+	}
+	
+	// Lets the player who is waiting for its opponent ponder on a copy of the board
+	private void startPondering(Player player)
+	{
+		if (ponderPolicy == PonderPolicy.DISABLED || !(player instanceof PonderingPlayer))
+			return;
+		final PonderingPlayer ponderer = (PonderingPlayer) player;
+		final StateTree state = copyBoard();
+		ponderStartCpuTime = getPonderThreadCpuTime();
+		ponderFuture = ponderService.submit(new Runnable() {
+			public void run() {
+				ponderer.startPondering(state);
+			}
+		});
+	}
+	
+	private void stopPondering(Player player, int turn)
+	{
+		if (ponderFuture == null)
+			return;
+		try {
+			((PonderingPlayer) player).stopPondering();
+			ponderFuture.get(ponderStopLimit, TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			out.println(player.getName() + " did not stop pondering in time and forfeits the game");
+			forfeitPondering(player, turn);
+			return;
+		}
+		catch (Exception e) {
+			e.printStackTrace(out);
+			out.println(player.getName() + " failed with exception while pondering and forfeits the game");
+			forfeitPondering(player, turn);
+			return;
+		}
+		finally {
+			ponderFuture.cancel(true);
+			ponderFuture = null;
+		}
+		if (ponderPolicy == PonderPolicy.CHARGED)
+			ponderCharge[turn] = (getPonderThreadCpuTime() - ponderStartCpuTime) / 1000000L;
+	}
+	
+	// The player loses the game once its opponent's move is in. The ponder thread may
+	// still be running on the player, so it is abandoned and the tournament doesn't use
+	// this player instance again (see hasFailed).
+	private void forfeitPondering(Player player, int turn)
+	{
+		StaticExceptionCounter.addException(player.getName());
+		failed[turn] = true;
+		ponderForfeit = turn;
+		ponderService.shutdownNow();
+		ponderService = newPonderService();
+	}
+	
+	private void notifyOpponentMoved(Player player, Move move)
+	{
+		if (!(player instanceof PonderingPlayer))
+			return;
+		try {
+			((PonderingPlayer) player).opponentMoved(move);
+		}
+		catch (Exception e) {
+			e.printStackTrace(out);
+			out.println(player.getName() + " failed with exception in opponentMoved");
+			StaticExceptionCounter.addException(player.getName());
+			failed[board.turn] = true;
+		}
+	}
+	
+	// Logs what the player's search did for the move it just made and adds it to the totals of the game
+	private void reportSearchStatistics(Player player, long moveTime)
+	{
+		if (!(player instanceof StatisticsPlayer))
+			return;
+		SearchStatistics statistics;
+		try {
+			statistics = ((StatisticsPlayer) player).getSearchStatistics();
+		}
+		catch (Exception e) {
+			e.printStackTrace(out);
+			out.println(player.getName() + " failed with exception in getSearchStatistics");
+			StaticExceptionCounter.addException(player.getName());
+			failed[board.turn] = true;
+			return;
+		}
+		if (statistics == null)
+			return;
+		statistics.moves = 1;
+		statistics.time = moveTime;
+		if (!fastDispatch)
+			out.println(player.getName() + " searched " + statistics + ".");
+		searchStatistics[board.turn].add(statistics);
+	}
+	
+	private void reportSearchTotals(Player player, int turn)
+	{
+		if (searchStatistics[turn].moves > 0)
+			out.println(player.getName() + " searched " + searchStatistics[turn] + " this game.");
+	}
+	
+	// CPU time, in nanoseconds, used so far by the thread players ponder on
+	private long getPonderThreadCpuTime()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (ponderThread == null || !bean.isThreadCpuTimeSupported())
+			return 0;
+		return Math.max(0, bean.getThreadCpuTime(ponderThread.getId()));
+	}
+	
+	// Players that don't take a BoardView expect a plain matrix, so the copy is always a plain board
+	private StateTree copyBoard()
+	{
+		StateTree copy = new RefereeBoard(board.rows, board.columns, board.winNumber, board.turn, board.pop1, board.pop2, null);
+		copy.copyFrom(board);
+		copy.setOut(out);
+		return copy;
+	}
+	
+	// The reused copy of the board for the player to move, brought up to date. It is
+	// only made again when the size of the board changed or the last one was abandoned.
+	private StateTree refreshPlayerBoard()
+	{
+		StateTree copy = playerBoards[board.turn];
+		if (copy == null || copy.rows != board.rows || copy.columns != board.columns || copy.winNumber != board.winNumber)
+		{
+			copy = copyBoard();
+			playerBoards[board.turn] = copy;
+			return copy;
+		}
+		copy.setOut(out);
+		copy.copyFrom(board);
+		return copy;
+	}
+	
+	// Runs on the player thread
+	private Move askForMove(Player player)
+	{
+		if (timeControl != null)
+		{
+			int turn = board.turn;
+			player.setClock(clocks[turn] / 1000000L, timeControl.increment, clocks[turn == 1 ? 2 : 1] / 1000000L);
+		}
+		if (player instanceof BoardViewPlayer)
+			return ((BoardViewPlayer) player).getMove(board.getView());
+		return player.getMove(playerBoard);
+	}
+	
+	private void logMove(Player player, Move move)
+	{
+		if (fastDispatch)
+			return;
+		String action;
+		if(move.getPop())
+			action = " popped a piece from column ";
+		else
+			action = " placed a piece in column ";
+		out.println(player.getName() + action + move.getColumn() + ".");
+	}
+	
+	// Bytes allocated so far by the calling thread, which runs the players in fast dispatch
+	private long getCurrentThreadAllocatedBytes()
+	{
+		if (!allocationCountingSupported)
+			return 0;
+		return Math.max(0, threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+	}
+	
+	// Bytes allocated so far by the thread the players run on
+	private long getPlayerThreadAllocatedBytes()
+	{
+		if (!allocationCountingSupported || playerThread == null)
+			return 0;
+		return Math.max(0, threadBean.getThreadAllocatedBytes(playerThread.getId()));
+	}
+	
+	private void reportAllocations(Player player, int turn)
+	{
+		if (!allocationCountingSupported || player == null)
+			return;
+		double seconds = thinkingTime[turn] / 1e9;
+		double rate = seconds > 0 ? allocatedBytes[turn] / seconds / (1024.0 * 1024.0) : 0.0;
+		out.println(player.getName() + " allocated " + allocatedBytes[turn] + " bytes in " 
+				+ seconds + " seconds of thinking (" + String.format(Locale.US, "%.2f", rate) + " MB/s).");
+	}
+	
 	
 	public static int checkForWinner(StateTree board)
 	{
-		int points = checkConnect(board); // see how many each player has in a row
+		return checkForWinner(board, new int[4]);
+	}
+	
+	// Same as above with a buffer of 4 ints for checkConnect, so nothing is allocated
+	public static int checkForWinner(StateTree board, int[] count)
+	{
+		int points = checkConnect(board, count); // see how many each player has in a row
 		if(points > 0) // if player 1 has more in a row they win
 			return 1;
 		else if(points < 0) // if player 2 has more in a row they win
@@ -243,14 +795,23 @@ public class Referee
 	// This counts how many n-in-a-rows each player has
 	public static int checkConnect(StateTree board)
 	{
+		return checkConnect(board, new int[4]);
+	}
+	
+	public static int checkConnect(StateTree board, int[] count)
+	{
+		if (board.getStorage() instanceof PackedStorage) // packed boards count whole words at a time
+			return ((PackedStorage) board.getStorage()).countConnections(board.winNumber);
 		int winner = 0;
-		int[] count = new int[4];
+		Arrays.fill(count, 0);
 		int winTotal = 0;
-		for(int i=0; i<board.rows; i++)
+		// Cells above the top piece of a column are empty, so they can't start a line
+		for(int j=0; j<board.columns; j++)
 		{
-			for(int j=0; j<board.columns; j++)
+			int height = board.getHeight(j);
+			for(int i=0; i<height; i++)
 			{
-				if(board.getBoardMatrix()[i][j] == 0)
+				if(board.getCell(i, j) == 0)
 				{
 					winner = 0;
 					for(int x=0; x<4; x++)
@@ -260,22 +821,22 @@ public class Referee
 				}
 				else
 				{
-					winner = board.getBoardMatrix()[i][j];
+					winner = board.getCell(i, j);
 					for(int x=0; x<board.winNumber; x++)
 					{
-						if((j+x < board.columns) && (board.getBoardMatrix()[i][j+x] == winner))
+						if((j+x < board.columns) && (board.getCell(i, j+x) == winner))
 							count[0]++;
 						else
 							count[0] = 0;
-						if((i+x < board.rows) && (board.getBoardMatrix()[i+x][j] == winner))
+						if((i+x < board.rows) && (board.getCell(i+x, j) == winner))
 							count[1]++;
 						else
 							count[1] = 0;
-						if((i+x < board.rows) && (j+x < board.columns) && (board.getBoardMatrix()[i+x][j+x] == winner))
+						if((i+x < board.rows) && (j+x < board.columns) && (board.getCell(i+x, j+x) == winner))
 							count[2]++;
 						else
 							count[2] = 0;
-						if((i-x >= 0) && (j+x < board.columns) && (board.getBoardMatrix()[i-x][j+x] == winner))
+						if((i-x >= 0) && (j+x < board.columns) && (board.getCell(i-x, j+x) == winner))
 							count[3]++;
 						else
 							count[3] = 0;
@@ -300,15 +861,7 @@ public class Referee
 	
 	public static boolean checkFull(StateTree board)
 	{
-		for(int i=0; i<board.rows; i++)
-		{
-			for(int j=0; j<board.columns; j++)
-			{
-				if(board.getBoardMatrix()[i][j] == 0)
-					return false;
-			}
-		}
-		return true;
+		return board.isFull();
 	}
 
 	public int getBoardRows() {
@@ -354,4 +907,107 @@ public class Referee
 	public void setTimeLimit(int i) {
 		timeLimit = i;
 	}
+
+	public long getMoveAllocationLimit() {
+		return moveAllocationLimit;
+	}
+
+	public void setMoveAllocationLimit(long moveAllocationLimit) {
+		this.moveAllocationLimit = moveAllocationLimit;
+	}
+
+	public long getGameAllocationLimit() {
+		return gameAllocationLimit;
+	}
+
+	public void setGameAllocationLimit(long gameAllocationLimit) {
+		this.gameAllocationLimit = gameAllocationLimit;
+	}
+
+	public long getSparseBoardThreshold() {
+		return sparseBoardThreshold;
+	}
+
+	public void setSparseBoardThreshold(long sparseBoardThreshold) {
+		this.sparseBoardThreshold = sparseBoardThreshold;
+	}
+
+	public boolean isPackedBoards() {
+		return packedBoards;
+	}
+
+	public void setPackedBoards(boolean packedBoards) {
+		this.packedBoards = packedBoards;
+	}
+
+	public PonderPolicy getPonderPolicy() {
+		return ponderPolicy;
+	}
+
+	public void setPonderPolicy(PonderPolicy ponderPolicy) {
+		this.ponderPolicy = ponderPolicy;
+	}
+
+	public TimeControl getTimeControl() {
+		return timeControl;
+	}
+
+	// Plays every game with a game clock instead of timeLimit per move, null goes back to timeLimit
+	public void setTimeControl(TimeControl timeControl) {
+		this.timeControl = timeControl;
+	}
+
+	// Milliseconds left on the clock of the given player (1 or 2), -1 without a game clock
+	public long getClock(int turn) {
+		return timeControl != null ? clocks[turn] / 1000000L : -1;
+	}
+
+	public boolean isPopOut() {
+		return popOut;
+	}
+
+	public void setPopOut(boolean popOut) {
+		this.popOut = popOut;
+	}
+
+	public void setMoveObserver(MoveObserver moveObserver) {
+		this.moveObserver = moveObserver;
+	}
+
+	public boolean isFastDispatch() {
+		return fastDispatch;
+	}
+
+	public void setFastDispatch(boolean fastDispatch) {
+		this.fastDispatch = fastDispatch;
+	}
+
+	public void setPonderStopLimit(long ponderStopLimit) {
+		this.ponderStopLimit = ponderStopLimit;
+	}
+
+	// Whether the given player (1 or 2) timed out, threw or broke a limit in the last game. Its
+	// instance may still be running on a thread the referee gave up on, so don't use it again.
+	public boolean hasFailed(int turn) {
+		return failed[turn];
+	}
+	
+	// Moves made so far in the current (or last) game
+	public int getMovesMade() {
+		return movesMade;
+	}
+	
+	// Search statistics of the given player (1 or 2) summed over the last game, null if it reported none
+	public SearchStatistics getSearchStatistics(int turn) {
+		if (searchStatistics[turn].moves == 0)
+			return null;
+		SearchStatistics copy = new SearchStatistics();
+		copy.add(searchStatistics[turn]);
+		return copy;
+	}
+
+	// Bytes the given player (1 or 2) allocated during the last game, -1 if unknown
+	public long getAllocatedBytes(int turn) {
+		return allocationCountingSupported ? allocatedBytes[turn] : -1;
+	}
 }
@@ -1,5 +1,6 @@
 package Referee;
 
+import Utilities.BoardStorage;
 import Utilities.StateTree;
 
 /**
@@ -17,4 +18,9 @@ public class RefereeBoard extends StateTree
 	{
 		super(r, c, w, t, p1, p2, p);
 	}
+	
+	public RefereeBoard(int r, int c, int w, int t, boolean p1, boolean p2, StateTree p, BoardStorage s)
+	{
+		super(r, c, w, t, p1, p2, p, s);
+	}
 }
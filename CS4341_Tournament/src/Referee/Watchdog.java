@@ -0,0 +1,143 @@
+package Referee;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This is the watchdog of the fast dispatch mode of the referee (see
+ * Referee.setFastDispatch). In that mode players are called straight on
+ * the thread that runs the game, so there is no future to give up on when
+ * a player runs out of time. Instead one daemon thread, shared by all
+ * referees, looks at the deadline of every game about once a millisecond
+ * while a move is being made, and interrupts the thread of a player that
+ * is over its time. While no move is being made it is parked.
+ *
+ * The referee still decides timeouts itself, by System.nanoTime, when the
+ * move comes back. The interrupt only tells players that check for it to
+ * stop, and a player that never returns is left to the battle time limit
+ * of the tournament.
+ */
+
+final class Watchdog
+{
+	private static final long PERIOD = 1000000L; // nanoseconds between two looks at the deadlines
+	private static final CopyOnWriteArrayList<Slot> slots = new CopyOnWriteArrayList<Slot>();
+	private static volatile Thread thread = null;
+	private static volatile boolean idle = false; // the watchdog is parked, or about to, until a move starts
+
+	// The game running on one thread
+	static final class Slot
+	{
+		private final Thread thread;
+		private long deadline = Long.MAX_VALUE; // System.nanoTime() the current move has to be done by
+		private boolean fired = false; // the watchdog interrupted the current move
+
+		private Slot(Thread t)
+		{
+			thread = t;
+		}
+
+		// Called by the game thread before it asks for a move
+		void start(long d)
+		{
+			synchronized(this)
+			{
+				deadline = d;
+			}
+			if(idle)
+				LockSupport.unpark(Watchdog.thread);
+		}
+
+		// Called by the game thread when the move is back. Clears the interrupt the watchdog
+		// sent, if it did, and keeps any other interrupt of the thread.
+		void stop()
+		{
+			boolean wasFired;
+			synchronized(this)
+			{
+				deadline = Long.MAX_VALUE;
+				wasFired = fired;
+				fired = false;
+			}
+			if(Thread.interrupted() && !wasFired)
+				Thread.currentThread().interrupt();
+		}
+
+		// Deadline and interrupt are checked together, so a move that is already back is never interrupted.
+		// Returns true if the move is still being watched.
+		private synchronized boolean check()
+		{
+			if(deadline == Long.MAX_VALUE)
+				return false;
+			if(System.nanoTime() - deadline > 0)
+			{
+				deadline = Long.MAX_VALUE;
+				fired = true;
+				thread.interrupt();
+				return false;
+			}
+			return true;
+		}
+
+		private synchronized boolean isArmed()
+		{
+			return deadline != Long.MAX_VALUE;
+		}
+	}
+
+	private Watchdog()
+	{
+	}
+
+	// Starts watching the calling thread, for the length of a game
+	static Slot register()
+	{
+		Slot slot = new Slot(Thread.currentThread());
+		slots.add(slot);
+		startThread();
+		return slot;
+	}
+
+	static void unregister(Slot slot)
+	{
+		slots.remove(slot);
+	}
+
+	private static boolean isAnyArmed()
+	{
+		for(Slot slot : slots)
+		{
+			if(slot.isArmed())
+				return true;
+		}
+		return false;
+	}
+
+	private static synchronized void startThread()
+	{
+		if(thread != null)
+			return;
+		thread = new Thread(new Runnable() {
+			public void run() {
+				while(true)
+				{
+					boolean armed = false;
+					for(Slot slot : slots)
+						armed |= slot.check();
+					if(armed)
+					{
+						LockSupport.parkNanos(PERIOD);
+						continue;
+					}
+					// Slot.start unparks only once idle is seen, so look again after setting it
+					idle = true;
+					if(!isAnyArmed())
+						LockSupport.park();
+					idle = false;
+				}
+			}
+		}, "referee-watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
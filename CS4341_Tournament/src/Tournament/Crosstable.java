@@ -0,0 +1,141 @@
+/**
+ * This is the crosstable of a tournament: the points every
+ * player scored against every other player, in battles
+ * (3 - win, 1 - tie, 0 - loss, as in Tournament.addResult).
+ * Players are numbered in the order they were given, the
+ * table is kept in plain int arrays indexed by those ids.
+ *
+ * It is filled by one thread, the one that records the
+ * results of the tournament.
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Crosstable {
+	private final String[] names;
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final int[][] points; // points[i][j] - points player i scored against player j
+	private final int[][] battles; // battles[i][j] - battles played between players i and j
+
+	public Crosstable(List<String> players) {
+		names = players.toArray(new String[0]);
+		for (int i = 0; i < names.length; ++i) {
+			ids.put(names[i], i);
+		}
+		points = new int[names.length][names.length];
+		battles = new int[names.length][names.length];
+	}
+
+	/**
+	 * The id of a player, -1 if it doesn't take part.
+	 */
+	public int getId(String playerName) {
+		Integer id = ids.get(playerName);
+		return (id == null) ? -1 : id;
+	}
+
+	public String getName(int id) {
+		return names[id];
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public void add(String player1, String player2, int result) {
+		int id1 = getId(player1);
+		int id2 = getId(player2);
+		if (id1 < 0 || id2 < 0) {
+			return;
+		}
+		switch (result) {
+			case 1:
+				points[id1][id2] += 3;
+				break;
+			case 2:
+				points[id2][id1] += 3;
+				break;
+			case 0:
+				points[id1][id2] += 1;
+				points[id2][id1] += 1;
+				break;
+		}
+		++battles[id1][id2];
+		++battles[id2][id1];
+	}
+
+	public int getPoints(int player, int opponent) {
+		return points[player][opponent];
+	}
+
+	public int getBattles(int player, int opponent) {
+		return battles[player][opponent];
+	}
+
+	/**
+	 * Prints the table, one row per player with its points against every
+	 * column (players by id, "-" where no battle was played) and its total.
+	 */
+	public void print(PrintStream out) {
+		int width = 3;
+		for (String name : names) {
+			width = Math.max(width, name.length());
+		}
+		StringBuilder header = new StringBuilder(String.format("%3s %-" + width + "s", "", ""));
+		for (int j = 0; j < names.length; ++j) {
+			header.append(String.format(" %3d", j));
+		}
+		out.println(header.append("  total"));
+		for (int i = 0; i < names.length; ++i) {
+			StringBuilder row = new StringBuilder(String.format("%3d %-" + width + "s", i, names[i]));
+			int total = 0;
+			for (int j = 0; j < names.length; ++j) {
+				if (i == j || battles[i][j] == 0) {
+					row.append("   -");
+				}
+				else {
+					row.append(String.format(" %3d", points[i][j]));
+					total += points[i][j];
+				}
+			}
+			out.println(row.append(String.format("  %5d", total)));
+		}
+	}
+
+	/**
+	 * Writes the table as CSV: a header row with the player names, then
+	 * one row per player with its points against each of them (empty where
+	 * no battle was played).
+	 */
+	public void writeCsv(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+			StringBuilder header = new StringBuilder("player");
+			for (String name : names) {
+				header.append(',').append(name);
+			}
+			writer.println(header);
+			for (int i = 0; i < names.length; ++i) {
+				StringBuilder row = new StringBuilder(names[i]);
+				for (int j = 0; j < names.length; ++j) {
+					row.append(',');
+					if (i != j && battles[i][j] > 0) {
+						row.append(points[i][j]);
+					}
+				}
+				writer.println(row);
+			}
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * This is a compact record of one game played during
+ * a battle: who played which colour, the geometry and
+ * time limit of the game, its time control ("-" for
+ * seconds per move), its outcome (1 - first
+ * player wins, 2 - second player wins, 0 - tie, -1 -
+ * game was aborted), how many moves were made and how
+ * long the game took, in milliseconds.
+ *
+ * Records are written as a single space separated line
+ * so they can be passed between tournament workers and
+ * the coordinator. Players that report search statistics
+ * (see Players.StatisticsPlayer) get their totals for the
+ * game in two more fields, "-" for a player without them.
+ *
+ * Lines of older tournaments still parse: without the
+ * time control (9 or 11 fields), without moves and
+ * milliseconds (7 fields, or 9 with statistics), those
+ * are then left at 0.
+ */
+
+package Tournament;
+
+import Players.SearchStatistics;
+import Utilities.TimeControl;
+
+public class GameRecord {
+	private final String player1;
+	private final String player2;
+	private final int boardRows;
+	private final int boardColumns;
+	private final int winNumber;
+	private final int timeLimit;
+	private final TimeControl timeControl; // null with seconds per move
+	private final int result;
+	private final int moves;
+	private final long milliseconds;
+	private final SearchStatistics statistics1; // null if player1 reported none
+	private final SearchStatistics statistics2;
+
+	public GameRecord(String player1, String player2, int boardRows, int boardColumns,
+						int winNumber, int timeLimit, TimeControl timeControl, int result, int moves, long milliseconds) {
+		this(player1, player2, boardRows, boardColumns, winNumber, timeLimit, timeControl, result, moves, milliseconds, 
+				null, null);
+	}
+
+	public GameRecord(String player1, String player2, int boardRows, int boardColumns,
+						int winNumber, int timeLimit, TimeControl timeControl, int result, int moves, long milliseconds,
+						SearchStatistics statistics1, SearchStatistics statistics2) {
+		this.player1 = player1;
+		this.player2 = player2;
+		this.boardRows = boardRows;
+		this.boardColumns = boardColumns;
+		this.winNumber = winNumber;
+		this.timeLimit = timeLimit;
+		this.timeControl = timeControl;
+		this.result = result;
+		this.moves = moves;
+		this.milliseconds = milliseconds;
+		this.statistics1 = statistics1;
+		this.statistics2 = statistics2;
+	}
+
+	public static GameRecord parse(String line) {
+		String[] fields = line.trim().split(" ");
+		boolean old = (fields.length == 7) || (fields.length == 9 && !isNumber(fields[7]));
+		boolean noTimeControl = old || fields.length == 9 || fields.length == 11;
+		if (fields.length < 7 || fields.length > 12) {
+			throw new IllegalArgumentException("Malformed game record: " + line);
+		}
+		TimeControl timeControl = null;
+		int next = 6;
+		if (!noTimeControl) {
+			timeControl = fields[next].equals("-") ? null : TimeControl.parse(fields[next]);
+			++next;
+		}
+		int result = Integer.parseInt(fields[next++]);
+		int moves = 0;
+		long milliseconds = 0;
+		if (!old) {
+			moves = Integer.parseInt(fields[next++]);
+			milliseconds = Long.parseLong(fields[next++]);
+		}
+		SearchStatistics statistics1 = null;
+		SearchStatistics statistics2 = null;
+		if (fields.length == next + 2) {
+			statistics1 = fields[next].equals("-") ? null : SearchStatistics.parse(fields[next]);
+			statistics2 = fields[next + 1].equals("-") ? null : SearchStatistics.parse(fields[next + 1]);
+		}
+		else if (fields.length != next) {
+			throw new IllegalArgumentException("Malformed game record: " + line);
+		}
+		return new GameRecord(fields[0], fields[1],
+				Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+				Integer.parseInt(fields[4]), Integer.parseInt(fields[5]),
+				timeControl, result, moves, milliseconds, statistics1, statistics2);
+	}
+
+	private static boolean isNumber(String field) {
+		return field.matches("-?[0-9]+");
+	}
+
+	public String getPlayer1() {
+		return player1;
+	}
+
+	public String getPlayer2() {
+		return player2;
+	}
+
+	public int getBoardRows() {
+		return boardRows;
+	}
+
+	public int getBoardColumns() {
+		return boardColumns;
+	}
+
+	public int getWinNumber() {
+		return winNumber;
+	}
+
+	public int getTimeLimit() {
+		return timeLimit;
+	}
+
+	public TimeControl getTimeControl() {
+		return timeControl;
+	}
+
+	public int getResult() {
+		return result;
+	}
+
+	public int getMoves() {
+		return moves;
+	}
+
+	public long getMilliseconds() {
+		return milliseconds;
+	}
+
+	public SearchStatistics getStatistics1() {
+		return statistics1;
+	}
+
+	public SearchStatistics getStatistics2() {
+		return statistics2;
+	}
+
+	@Override
+	public String toString() {
+		String line = player1 + " " + player2 + " " + boardRows + " " + boardColumns + " "
+				+ winNumber + " " + timeLimit + " " + (timeControl == null ? "-" : timeControl.toString()) + " "
+				+ result + " " + moves + " " + milliseconds;
+		if (statistics1 == null && statistics2 == null) {
+			return line;
+		}
+		return line + " " + (statistics1 == null ? "-" : statistics1.encode())
+				+ " " + (statistics2 == null ? "-" : statistics2.encode());
+	}
+}
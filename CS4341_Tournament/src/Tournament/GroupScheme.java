@@ -2,33 +2,77 @@
  * This is group scheme for the tournament. It would
  * define pairings of players in ONE vs ALL fashion.
  * It is also responsible for maintaining leaderboard.
- * 
+ *
+ * The leaderboard is kept sorted all the time in a skip
+ * list of (score, name) standings, so points can be added
+ * from many threads and the standings can be read at any
+ * moment without locking or sorting. A player's new
+ * standing is inserted before its old one is removed, so
+ * a reader may see both, which is why snapshots drop the
+ * second one. A reader can still walk past the spot a
+ * player jumps to, so a snapshot taken while points were
+ * added is made again by sorting the current standings.
+ *
  * @author Oleksandr Narykov
  *
  */
 
 package Tournament;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class GroupScheme implements TournamentScheme {
-	HashMap<String, Integer> results;
+	ConcurrentHashMap<String, Standing> results;
+	ConcurrentSkipListSet<Standing> ranking;
+	final AtomicLong updatesStarted = new AtomicLong(); // addPoints calls that began changing ranking
+	final AtomicLong updatesFinished = new AtomicLong(); // and those that are done with it
 	ArrayList<ArrayList<String>> tournamentTable;
 	int numberOfMatches;
 	int counter;
-	
+
+	// A player's score at one moment, ordered by score (highest first), then by name
+	static final class Standing implements Comparable<Standing> {
+		final String name;
+		final int score;
+
+		Standing(String name, int score) {
+			this.name = name;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Standing other) {
+			if (score != other.score) {
+				return Integer.compare(other.score, score);
+			}
+			return name.compareTo(other.name);
+		}
+	}
+
 	public GroupScheme(List<String> participants) {
-		results = new HashMap<String, Integer>();
+		results = new ConcurrentHashMap<String, Standing>();
+		ranking = new ConcurrentSkipListSet<Standing>();
 		for (String participant : participants) {
-			results.put(participant, 0);
+			Standing standing = new Standing(participant, 0);
+			results.put(participant, standing);
+			ranking.add(standing);
 		}
-		
+
 		tournamentTable = new ArrayList<ArrayList<String>>();
 		for (int i = 0; i < participants.size()-1; ++i) {
 			for (int j = i+1; j < participants.size(); ++j) {
@@ -38,29 +82,12 @@ public class GroupScheme implements TournamentScheme {
 				tournamentTable.add(pair);
 			}
 		}
-		
+
 		numberOfMatches = tournamentTable.size();
 	}
 
-	static <K,V extends Comparable<? super V>> 
-    List<Entry<K, V>> entriesSortedByValues(Map<K,V> map) {
-
-		List<Entry<K,V>> sortedEntries = new ArrayList<Entry<K,V>>(map.entrySet());
-
-		Collections.sort(sortedEntries, 
-				new Comparator<Entry<K,V>>() {
-					@Override
-					public int compare(Entry<K,V> e1, Entry<K,V> e2) {
-						return e2.getValue().compareTo(e1.getValue());
-				}
-			}
-		);
-
-		return sortedEntries;
-}
-	
 	@Override
-	public List<String> getNextCompetitors() {
+	public synchronized List<String> getNextCompetitors() {
 		if(counter >= numberOfMatches){
 			System.out.println("All matches were played");
 			return null;
@@ -69,14 +96,82 @@ public class GroupScheme implements TournamentScheme {
 		return tournamentTable.get(counter - 1);
 	}
 
+	public synchronized int getRemainingMatches() {
+		return numberOfMatches - counter;
+	}
+
 	@Override
 	public void addPoints(String playerName, int points) {
-		results.replace(playerName, results.get(playerName) + points);
+		// compute runs atomically for the player, so concurrent updates of one player queue up
+		results.compute(playerName, (name, old) -> {
+			if (points == 0) {
+				return old; // the same standing, adding it again and removing the old one would lose it
+			}
+			Standing updated = new Standing(name, old.score + points);
+			updatesStarted.incrementAndGet();
+			ranking.add(updated);
+			ranking.remove(old);
+			updatesFinished.incrementAndGet();
+			return updated;
+		});
 	}
 
 	@Override
 	public List<Entry<String, Integer>> getLeaderboard() {
+		return getLeaderboard(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * The best limit players, best first, without locking anything.
+	 */
+	public List<Entry<String, Integer>> getLeaderboard(int limit) {
+		long finished = updatesFinished.get();
+		long started = updatesStarted.get();
+		List<Entry<String, Integer>> leaderboard = collect(ranking, limit);
+		if (finished == started && updatesStarted.get() == started) {
+			return leaderboard; // nothing moved while we looked
+		}
+		List<Standing> standings = new ArrayList<Standing>(results.values());
+		Collections.sort(standings);
+		return collect(standings, limit);
+	}
+
+	private static List<Entry<String, Integer>> collect(Iterable<Standing> standings, int limit) {
+		List<Entry<String, Integer>> leaderboard = new ArrayList<Entry<String, Integer>>();
+		Set<String> seen = new HashSet<String>();
+		for (Standing standing : standings) {
+			if (leaderboard.size() >= limit) {
+				break;
+			}
+			if (seen.add(standing.name)) {
+				leaderboard.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(standing.name, standing.score));
+			}
+		}
+		return leaderboard;
+	}
 
-		return entriesSortedByValues(results);
+	/**
+	 * Writes the current standings to a file, one "rank name score" line per
+	 * player. The file is replaced in one step, readers never see half of it.
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		List<Entry<String, Integer>> leaderboard = getLeaderboard();
+		int played;
+		synchronized (this) {
+			played = counter;
+		}
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		File temporary = new File(file.getPath() + ".tmp");
+		try (PrintWriter writer = new PrintWriter(temporary, "UTF-8")) {
+			writer.println("# " + new Date() + ", " + played + " of " + numberOfMatches + " battles started");
+			int rank = 0;
+			for (Entry<String, Integer> entry : leaderboard) {
+				writer.println(++rank + " " + entry.getKey() + " " + entry.getValue());
+			}
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 }
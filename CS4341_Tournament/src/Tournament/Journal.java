@@ -0,0 +1,210 @@
+/**
+ * This is the journal of a tournament: one line for every
+ * battle that was played to the end, with its result, so
+ * a tournament that was killed can be resumed where it
+ * stopped (see Tournament.run).
+ *
+ * Lines are written to the file as soon as a battle is
+ * done, so they survive the JVM dying. They are forced to
+ * the disk in batches, after SYNC_RECORDS battles or
+ * SYNC_INTERVAL milliseconds, whichever comes first, so a
+ * burst of short battles doesn't wait for the disk after
+ * every one of them. add only checks the interval when a
+ * battle comes in, the tournament calls syncIfDue every
+ * SYNC_INTERVAL milliseconds from a timer so the last
+ * battles before a long one are forced too. Every battle
+ * line carries a checksum, a line that was only partly
+ * written is ignored.
+ *
+ * The header carries a fingerprint of the tournament's
+ * configuration (see Tournament.getConfigFingerprint). A
+ * journal written with another configuration is not
+ * resumed, a new one is started.
+ *
+ * File layout (one record per line):
+ *   "# tournament journal 2 fingerprint"
+ *   "B player1 player2 result checksum"   a finished battle
+ *   "END"                                 the tournament is over
+ */
+
+package Tournament;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class Journal implements AutoCloseable {
+	private static final String HEADER = "# tournament journal 2";
+	private static final String END = "END";
+	private static final int SYNC_RECORDS = 16;
+	static final long SYNC_INTERVAL = 1000;
+
+	private final FileChannel channel;
+	private final List<Battle> finished = new ArrayList<Battle>();
+	private int unsynced = 0;
+	private long lastSync = System.currentTimeMillis();
+
+	// A battle read from the journal
+	public static class Battle {
+		public final String player1;
+		public final String player2;
+		public final int result;
+
+		Battle(String player1, String player2, int result) {
+			this.player1 = player1;
+			this.player2 = player2;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Opens the journal. The battles of an unfinished tournament with the
+	 * same configuration fingerprint in it are kept (see getFinished), a
+	 * finished tournament or another configuration is thrown away.
+	 */
+	public Journal(File file, String fingerprint) throws IOException {
+		String header = HEADER + " " + fingerprint;
+		boolean resume = false;
+		long validLength = 0;
+		if (file.exists()) {
+			List<Battle> battles = new ArrayList<Battle>();
+			long[] length = new long[1];
+			resume = read(file, header, battles, length);
+			if (resume) {
+				finished.addAll(battles);
+				validLength = length[0];
+			}
+		}
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		@SuppressWarnings("resource")
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		channel = output.getChannel();
+		// Drop a torn last line, or the whole file when starting over
+		channel.truncate(validLength);
+		channel.position(validLength);
+		if (!resume) {
+			write(header);
+			sync();
+		}
+	}
+
+	/**
+	 * Battles finished before the tournament was stopped, in the order they were played.
+	 */
+	public List<Battle> getFinished() {
+		return finished;
+	}
+
+	/**
+	 * Adds a finished battle.
+	 */
+	public synchronized void add(String player1, String player2, int result) throws IOException {
+		String record = "B " + player1 + " " + player2 + " " + result;
+		write(record + " " + checksum(record));
+		++unsynced;
+		long now = System.currentTimeMillis();
+		if (unsynced >= SYNC_RECORDS || now - lastSync >= SYNC_INTERVAL) {
+			sync();
+		}
+	}
+
+	/**
+	 * Marks the tournament as over, the next one starts a new journal.
+	 */
+	public synchronized void finish() throws IOException {
+		write(END);
+		sync();
+	}
+
+	/**
+	 * Forces what was written to the disk.
+	 */
+	public synchronized void sync() throws IOException {
+		channel.force(false);
+		unsynced = 0;
+		lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Forces battles that were added SYNC_INTERVAL milliseconds or more
+	 * after the last sync to the disk, does nothing once the journal is closed.
+	 */
+	public synchronized void syncIfDue() throws IOException {
+		if (unsynced > 0 && channel.isOpen() && System.currentTimeMillis() - lastSync >= SYNC_INTERVAL) {
+			sync();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void write(String line) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static String checksum(String record) {
+		CRC32 crc = new CRC32();
+		crc.update(record.getBytes(StandardCharsets.UTF_8));
+		return Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * Reads the battles of a journal into battles and the length of its
+	 * intact part into length[0]. Returns false if the journal is of a
+	 * finished tournament, has another header or is not a journal at all.
+	 */
+	private static boolean read(File file, String header, List<Battle> battles, long[] length) throws IOException {
+		long lastLength = 0;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line = reader.readLine();
+			if (line == null || !line.equals(header)) {
+				return false;
+			}
+			length[0] = line.getBytes(StandardCharsets.UTF_8).length + 1;
+			while ((line = reader.readLine()) != null) {
+				if (line.equals(END)) {
+					return false;
+				}
+				String[] fields = line.split(" ");
+				int end = line.lastIndexOf(' ');
+				if (fields.length != 5 || !fields[0].equals("B") || !checksum(line.substring(0, end)).equals(fields[4])) {
+					break; // torn by a crash, the rest is lost
+				}
+				battles.add(new Battle(fields[1], fields[2], Integer.parseInt(fields[3])));
+				lastLength = line.getBytes(StandardCharsets.UTF_8).length + 1;
+				length[0] += lastLength;
+			}
+		}
+		if (length[0] > file.length()) {
+			// The last line made it to the file, but its newline didn't
+			if (battles.isEmpty()) {
+				return false;
+			}
+			battles.remove(battles.size() - 1);
+			length[0] -= lastLength;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * This is a histogram of move times. Every doubling of
+ * time is split into four buckets, so percentiles are
+ * off by at most 25%, from a nanosecond up to hours, in
+ * a fixed amount of memory. Recording is lock-free and
+ * allocates nothing, so referees can record every move.
+ *
+ * Histograms are written as "bucket:count" pairs separated
+ * by commas (only buckets that are not empty), so workers
+ * can send them to the coordinator in one word.
+ */
+
+package Tournament;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	private static final int BUCKETS = 64 * BUCKETS_PER_DOUBLING;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	public void record(long nanoseconds) {
+		counts.incrementAndGet(bucket(Math.max(nanoseconds, 1)));
+	}
+
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			long count = other.counts.get(i);
+			if (count != 0) {
+				counts.addAndGet(i, count);
+			}
+		}
+	}
+
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * The upper bound of the bucket holding the given percentile (0 - 100), in nanoseconds, 0 if empty.
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += snapshot[i];
+			if (seen >= Math.max(rank, 1)) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	public String encode() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < BUCKETS; ++i) {
+			long count = counts.get(i);
+			if (count != 0) {
+				if (sb.length() > 0) {
+					sb.append(',');
+				}
+				sb.append(i).append(':').append(count);
+			}
+		}
+		return sb.length() > 0 ? sb.toString() : "-";
+	}
+
+	public static LatencyHistogram parse(String s) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		if (s.equals("-")) {
+			return histogram;
+		}
+		for (String pair : s.split(",")) {
+			String[] fields = pair.split(":");
+			if (fields.length != 2) {
+				throw new IllegalArgumentException("Malformed histogram: " + s);
+			}
+			histogram.counts.addAndGet(Integer.parseInt(fields[0]), Long.parseLong(fields[1]));
+		}
+		return histogram;
+	}
+
+	private static int bucket(long nanoseconds) {
+		int exponent = 63 - Long.numberOfLeadingZeros(nanoseconds);
+		// The two bits below the highest one pick the quarter within the doubling
+		int quarter = (exponent >= 2) ? (int) (nanoseconds >>> (exponent - 2)) & 3 : 0;
+		return Math.min(exponent * BUCKETS_PER_DOUBLING + quarter, BUCKETS - 1);
+	}
+
+	private static long upperBound(int bucket) {
+		int exponent = bucket / BUCKETS_PER_DOUBLING;
+		int quarter = bucket % BUCKETS_PER_DOUBLING;
+		if (exponent < 2) {
+			return 1L << (exponent + 1);
+		}
+		if (exponent >= 62) {
+			return Long.MAX_VALUE;
+		}
+		return (1L << exponent) + ((long) (quarter + 1) << (exponent - 2));
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * This is one cell of a sweep matrix: the conditions a
+ * pair of games is played under, the geometry of the
+ * board, whether pop outs are allowed and the time the
+ * players get, either seconds per move or a game clock
+ * (see Utilities.TimeControl).
+ *
+ * A sweep matrix is a text file with one condition per
+ * line, "geometry pop|nopop time", e.g.
+ *
+ *   # capacity study
+ *   6x7/4   pop    10
+ *   8x9/5   nopop  10
+ *   12x13/6 pop    60+0.5
+ *
+ * where a time with a "+" is a game clock and any other
+ * is seconds per move. Empty lines and lines starting with
+ * "#" are skipped. See Tournament.setSweepFile.
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import Utilities.Geometry;
+import Utilities.TimeControl;
+
+public class MatchCondition {
+	public final Geometry geometry;
+	public final boolean popOut;
+	public final int timeLimit; // seconds per move, 0 with a game clock
+	public final TimeControl timeControl; // null without a game clock
+
+	public MatchCondition(Geometry geometry, boolean popOut, int timeLimit, TimeControl timeControl) {
+		this.geometry = geometry;
+		this.popOut = popOut;
+		this.timeLimit = timeLimit;
+		this.timeControl = timeControl;
+	}
+
+	// Reads a condition written by toString, e.g. "6x7/4 pop 10"
+	public static MatchCondition parse(String s) {
+		String[] fields = s.trim().split("\\s+");
+		if (fields.length != 3 || !(fields[1].equals("pop") || fields[1].equals("nopop"))) {
+			throw new IllegalArgumentException("Malformed match condition: " + s);
+		}
+		Geometry geometry = Geometry.parse(fields[0]);
+		boolean popOut = fields[1].equals("pop");
+		if (fields[2].contains("+")) {
+			return new MatchCondition(geometry, popOut, 0, TimeControl.parse(fields[2]));
+		}
+		int timeLimit = Integer.parseInt(fields[2]);
+		if (timeLimit <= 0) {
+			throw new IllegalArgumentException("Bad time limit: " + s);
+		}
+		return new MatchCondition(geometry, popOut, timeLimit, null);
+	}
+
+	/**
+	 * Reads a sweep matrix, the conditions in the order they are in the file.
+	 */
+	public static List<MatchCondition> readMatrix(File file) throws IOException {
+		List<MatchCondition> matrix = new ArrayList<MatchCondition>();
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if (!line.isEmpty() && !line.startsWith("#")) {
+				matrix.add(parse(line));
+			}
+		}
+		if (matrix.isEmpty()) {
+			throw new IllegalArgumentException("Empty sweep matrix: " + file);
+		}
+		return matrix;
+	}
+
+	// The condition as part of a file name, e.g. "6x7-4-pop-10"
+	public String toFileName() {
+		return geometry.rows + "x" + geometry.columns + "-" + geometry.winNumber + "-"
+				+ (popOut ? "pop" : "nopop") + "-" + getTime();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof MatchCondition)) {
+			return false;
+		}
+		MatchCondition c = (MatchCondition) o;
+		return geometry.equals(c.geometry) && popOut == c.popOut && timeLimit == c.timeLimit
+				&& (timeControl == null ? c.timeControl == null : timeControl.equals(c.timeControl));
+	}
+
+	@Override
+	public int hashCode() {
+		return (geometry.hashCode() * 31 + (popOut ? 1 : 0)) * 31 + getTime().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return geometry + " " + (popOut ? "pop" : "nopop") + " " + getTime();
+	}
+
+	private String getTime() {
+		return (timeControl != null) ? timeControl.toString() : Integer.toString(timeLimit);
+	}
+}
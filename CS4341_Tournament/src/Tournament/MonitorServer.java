@@ -0,0 +1,95 @@
+/**
+ * This serves the state of a running tournament (see
+ * TournamentMonitor) over HTTP on the loopback interface
+ * only, for a browser or curl on the same machine:
+ *
+ *   /       plain text
+ *   /json   the same as one JSON object
+ */
+
+package Tournament;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class MonitorServer {
+	private final TournamentMonitor monitor;
+	private final HttpServer server;
+
+	public MonitorServer(TournamentMonitor monitor, int port) throws IOException {
+		this.monitor = monitor;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/", exchange -> respond(exchange, "text/plain", text()));
+		server.createContext("/json", exchange -> respond(exchange, "application/json", json()));
+		server.start();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	private static void respond(HttpExchange exchange, String type, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	private String text() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "games played: %d, %.2f games/s, %d battles queued%n",
+				monitor.getGamesPlayed(), monitor.getGamesPerSecond(), monitor.getQueueDepth()));
+		section(sb, "battles in flight", monitor.getInFlightMatches());
+		section(sb, "move times (player moves p50 p90 p99 max, ms)", monitor.getPlayerLatencies());
+		section(sb, "forfeits", monitor.getForfeits());
+		section(sb, "losses on time", monitor.getTimeLosses());
+		section(sb, "standings", monitor.getStandings());
+		return sb.toString();
+	}
+
+	private static void section(StringBuilder sb, String title, String[] lines) {
+		sb.append(System.lineSeparator()).append(title).append(':').append(System.lineSeparator());
+		for (String line : lines) {
+			sb.append("  ").append(line).append(System.lineSeparator());
+		}
+	}
+
+	private String json() {
+		StringBuilder sb = new StringBuilder("{");
+		sb.append("\"gamesPlayed\":").append(monitor.getGamesPlayed());
+		sb.append(String.format(Locale.US, ",\"gamesPerSecond\":%.3f", monitor.getGamesPerSecond()));
+		sb.append(",\"queueDepth\":").append(monitor.getQueueDepth());
+		sb.append(",\"longestMatchSeconds\":").append(monitor.getLongestMatchSeconds());
+		array(sb, "inFlightMatches", monitor.getInFlightMatches());
+		array(sb, "playerLatencies", monitor.getPlayerLatencies());
+		array(sb, "forfeits", monitor.getForfeits());
+		array(sb, "timeLosses", monitor.getTimeLosses());
+		array(sb, "standings", monitor.getStandings());
+		return sb.append('}').toString();
+	}
+
+	// The lines are kept as strings, in the same format as the MBean attributes
+	private static void array(StringBuilder sb, String name, String[] lines) {
+		sb.append(",\"").append(name).append("\":[");
+		for (int i = 0; i < lines.length; ++i) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append('"').append(lines[i].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+		}
+		sb.append(']');
+	}
+}
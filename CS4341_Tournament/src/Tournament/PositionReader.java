@@ -0,0 +1,93 @@
+/**
+ * This reads a position file written by PositionWriter.
+ * The file is memory-mapped, in windows of whole chunks,
+ * and every chunk is handed out as its own read-only
+ * buffer, so chunks can be read by different threads.
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PositionReader {
+	private static final long WINDOW_SIZE = 1L << 30; // bytes mapped at once
+
+	// The records of one chunk
+	public static class Chunk {
+		private final ByteBuffer data;
+		private final int count;
+
+		Chunk(ByteBuffer data, int count) {
+			this.data = data;
+			this.count = count;
+		}
+
+		/**
+		 * A fresh buffer over the records, for the calling thread.
+		 */
+		public ByteBuffer getData() {
+			return data.duplicate();
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+
+	public static List<Chunk> read(File file) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		try (RandomAccessFile input = new RandomAccessFile(file, "r");
+				FileChannel channel = input.getChannel()) {
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(PositionWriter.HEADER_SIZE);
+			readFully(channel, header, 0);
+			if (header.getInt(0) != PositionWriter.MAGIC || header.getInt(4) != PositionWriter.VERSION) {
+				throw new IOException(file + " is not a position file");
+			}
+
+			long position = PositionWriter.HEADER_SIZE;
+			while (position < size) {
+				// Map as many whole chunks as fit into one window
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(WINDOW_SIZE, size - position));
+				int offset = 0;
+				while (offset + PositionWriter.CHUNK_HEADER_SIZE <= window.limit()) {
+					int count = window.getInt(offset);
+					int length = window.getInt(offset + 4);
+					int end = offset + PositionWriter.CHUNK_HEADER_SIZE + length;
+					if (count < 0 || length < 0 || end < 0) {
+						throw new IOException(file + " is corrupt at byte " + (position + offset));
+					}
+					if (end > window.limit()) {
+						break;
+					}
+					ByteBuffer data = window.duplicate();
+					data.position(offset + PositionWriter.CHUNK_HEADER_SIZE);
+					data.limit(end);
+					chunks.add(new Chunk(data.slice(), count));
+					offset = end;
+				}
+				if (offset == 0) {
+					throw new IOException(file + " ends in the middle of a chunk");
+				}
+				position += offset;
+			}
+		}
+		return chunks;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * This is one position of a recorded game: the board,
+ * whose turn it is, who has popped, how the game ended
+ * (1 - player1 wins, 2 - player2 wins, 3 - tie) and the
+ * score the player to move gave the position, if any.
+ *
+ * In a position file a record takes 8 bytes plus 2 bits
+ * per cell:
+ *   rows, columns, winNumber    one byte each
+ *   flags                       bits 0-1 turn, 2-3 result,
+ *                               4 pop1, 5 pop2, 6 has score
+ *   score                       float
+ *   cells                       column by column, bottom row
+ *                               first, 4 cells per byte
+ *
+ * Records are reused: set/read overwrite everything.
+ */
+
+package Tournament;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import Utilities.BoardStorage;
+import Utilities.StateTree;
+
+public class PositionRecord {
+	public static final int MAX_SIDE = 255; // rows and columns have to fit into a byte
+	private static final int HEADER_SIZE = 8;
+
+	private int rows;
+	private int columns;
+	private int winNumber;
+	private int turn;
+	private int result;
+	private boolean pop1;
+	private boolean pop2;
+	private float score = Float.NaN;
+	private byte[] cells = new byte[0];
+
+	/**
+	 * Takes the position of the board, the result is set later.
+	 */
+	public void set(StateTree board, float score) {
+		rows = board.rows;
+		columns = board.columns;
+		winNumber = board.winNumber;
+		turn = board.turn;
+		pop1 = board.pop1;
+		pop2 = board.pop2;
+		result = 0;
+		this.score = score;
+		int size = cellBytes();
+		if (cells.length < size) {
+			cells = new byte[size];
+		}
+		Arrays.fill(cells, 0, size, (byte) 0);
+		for (int j = 0; j < columns; j++) {
+			for (int i = 0; i < board.getHeight(j); i++) {
+				int index = j * rows + i;
+				cells[index >> 2] |= board.getCell(i, j) << ((index & 3) * 2);
+			}
+		}
+	}
+
+	public void setResult(int result) {
+		this.result = result;
+	}
+
+	/**
+	 * Number of bytes write() needs.
+	 */
+	public int size() {
+		return HEADER_SIZE + cellBytes();
+	}
+
+	public void write(ByteBuffer buffer) {
+		buffer.put((byte) rows);
+		buffer.put((byte) columns);
+		buffer.put((byte) winNumber);
+		int flags = turn | result << 2 | (pop1 ? 1 << 4 : 0) | (pop2 ? 1 << 5 : 0)
+				| (Float.isNaN(score) ? 0 : 1 << 6);
+		buffer.put((byte) flags);
+		buffer.putFloat(score);
+		buffer.put(cells, 0, cellBytes());
+	}
+
+	public void read(ByteBuffer buffer) {
+		rows = buffer.get() & 0xFF;
+		columns = buffer.get() & 0xFF;
+		winNumber = buffer.get() & 0xFF;
+		int flags = buffer.get();
+		turn = flags & 3;
+		result = (flags >> 2) & 3;
+		pop1 = (flags & 1 << 4) != 0;
+		pop2 = (flags & 1 << 5) != 0;
+		score = buffer.getFloat();
+		if ((flags & 1 << 6) == 0) {
+			score = Float.NaN;
+		}
+		int size = cellBytes();
+		if (cells.length < size) {
+			cells = new byte[size];
+		}
+		buffer.get(cells, 0, size);
+	}
+
+	/**
+	 * Puts the position on a board with the same geometry.
+	 */
+	public void copyTo(StateTree board) {
+		BoardStorage storage = board.getStorage();
+		for (int j = 0; j < columns; j++) {
+			for (int i = 0; i < rows; i++) {
+				storage.set(i, j, getCell(i, j));
+			}
+		}
+		board.resync();
+		board.turn = turn;
+		board.pop1 = pop1;
+		board.pop2 = pop2;
+	}
+
+	public int getCell(int row, int column) {
+		int index = column * rows + row;
+		return (cells[index >> 2] >> ((index & 3) * 2)) & 3;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getWinNumber() {
+		return winNumber;
+	}
+
+	public int getTurn() {
+		return turn;
+	}
+
+	public int getResult() {
+		return result;
+	}
+
+	public boolean getPop1() {
+		return pop1;
+	}
+
+	public boolean getPop2() {
+		return pop2;
+	}
+
+	public float getScore() {
+		return score;
+	}
+
+	private int cellBytes() {
+		return (rows * columns + 3) / 4;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * This writes position records (see PositionRecord) to a
+ * position file on a background thread, so the threads
+ * that play games never wait for the disk.
+ *
+ * Producers take an empty chunk, fill it with records and
+ * submit it. Only a few chunks exist, so producers that
+ * are faster than the disk block in takeChunk() until the
+ * writer has caught up.
+ *
+ * File layout: the magic number and the version (one int
+ * each), then chunks of one int with the number of records,
+ * one int with the number of bytes and the records.
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class PositionWriter implements AutoCloseable {
+	public static final int MAGIC = 0x434E5053; // "CNPS"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	public static final int CHUNK_HEADER_SIZE = 8;
+
+	private final FileChannel channel;
+	private final BlockingQueue<Chunk> empty;
+	private final BlockingQueue<Chunk> full;
+	private final Thread thread;
+	private final Chunk endOfFile = new Chunk(CHUNK_HEADER_SIZE);
+	private volatile IOException failure = null;
+	private long records = 0;
+
+	// A buffer of records, written to the file as one chunk
+	public static class Chunk {
+		private final ByteBuffer buffer;
+		private int count = 0;
+
+		Chunk(int size) {
+			buffer = ByteBuffer.allocate(size);
+			buffer.position(CHUNK_HEADER_SIZE);
+		}
+
+		/**
+		 * Adds a record, returns false if it doesn't fit anymore.
+		 */
+		public boolean add(PositionRecord record) {
+			if (buffer.remaining() < record.size()) {
+				return false;
+			}
+			record.write(buffer);
+			++count;
+			return true;
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+
+	public PositionWriter(File file, int chunkSize, int chunks) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		output.setLength(0);
+		channel = output.getChannel();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		empty = new ArrayBlockingQueue<Chunk>(chunks);
+		full = new ArrayBlockingQueue<Chunk>(chunks + 1);
+		for (int i = 0; i < chunks; ++i) {
+			empty.add(new Chunk(chunkSize));
+		}
+		thread = new Thread(this::writeChunks, "position-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * An empty chunk, waits until the writer has one.
+	 */
+	public Chunk takeChunk() throws InterruptedException, IOException {
+		checkFailure();
+		return empty.take();
+	}
+
+	/**
+	 * Hands a chunk to the writer. Don't touch it afterwards.
+	 */
+	public void submit(Chunk chunk) throws InterruptedException, IOException {
+		checkFailure();
+		if (chunk.count == 0) {
+			empty.put(chunk);
+		}
+		else {
+			full.put(chunk);
+		}
+	}
+
+	/**
+	 * Number of records written to the file so far.
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Writes what was submitted and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			full.put(endOfFile);
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		checkFailure();
+	}
+
+	private void writeChunks() {
+		try {
+			while (true) {
+				Chunk chunk = full.take();
+				if (chunk == endOfFile) {
+					return;
+				}
+				ByteBuffer buffer = chunk.buffer;
+				buffer.putInt(0, chunk.count);
+				buffer.putInt(4, buffer.position() - CHUNK_HEADER_SIZE);
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				synchronized (this) {
+					records += chunk.count;
+				}
+				buffer.clear();
+				buffer.position(CHUNK_HEADER_SIZE);
+				chunk.count = 0;
+				empty.put(chunk);
+			}
+		} catch (IOException e) {
+			failure = e;
+			empty.clear();
+			// Keep producers from waiting forever, they see the failure on their next call
+			for (int i = 0; i < 2; ++i) {
+				empty.offer(new Chunk(CHUNK_HEADER_SIZE));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Writing positions failed", failure);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * This remembers the results of battles between tournament
+ * runs, keyed by the fingerprints of both players (see
+ * PlayerRegistry.getFingerprint) and the conditions the
+ * battle was played under (see Tournament.getConditions).
+ * A battle between two players that didn't change, under
+ * the same conditions, doesn't have to be played again, so
+ * a nightly tournament only plays the battles of new and
+ * changed players (gauntlet mode, see Tournament.run).
+ *
+ * The cache is a text file that is only appended to, one
+ * "fingerprint1 fingerprint2 conditions result" line per
+ * battle, a later line for the same key wins. A line that
+ * doesn't parse (torn by a crash) is ignored. Delete the
+ * file to play every battle again.
+ */
+
+package Tournament;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ResultCache implements AutoCloseable {
+	private final Map<String, Integer> results = new HashMap<String, Integer>();
+	private final PrintWriter writer;
+
+	public ResultCache(File file) throws IOException {
+		if (file.exists()) {
+			read(file);
+		}
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		writer = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file, true), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The result of the battle between the two players under the given
+	 * conditions, null if it was never played.
+	 */
+	public Integer get(String fingerprint1, String fingerprint2, String conditions) {
+		return results.get(key(fingerprint1, fingerprint2, conditions));
+	}
+
+	public void put(String fingerprint1, String fingerprint2, String conditions, int result) {
+		String key = key(fingerprint1, fingerprint2, conditions);
+		results.put(key, result);
+		writer.println(key + " " + result);
+		writer.flush();
+	}
+
+	public int size() {
+		return results.size();
+	}
+
+	@Override
+	public void close() {
+		writer.close();
+	}
+
+	private static String key(String fingerprint1, String fingerprint2, String conditions) {
+		return fingerprint1 + " " + fingerprint2 + " " + conditions;
+	}
+
+	private void read(File file) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if (fields.length != 4 || !fields[3].matches("[012]")) {
+					continue;
+				}
+				results.put(key(fields[0], fields[1], fields[2]), Integer.parseInt(fields[3]));
+			}
+		}
+	}
+}
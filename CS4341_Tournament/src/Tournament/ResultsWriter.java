@@ -0,0 +1,130 @@
+/**
+ * This writes the results of a tournament as they come
+ * in, one record per line, for analysis without reading
+ * the logs: a "game" record for every game as soon as it
+ * ends and a "series" record for every battle, after its
+ * games. Games of battles that run at the same time are
+ * interleaved, and a battle a worker failed and played
+ * again keeps the games of the failed attempt.
+ *
+ * Records are JSON objects (JSON lines) or, for a file
+ * ending in ".csv", CSV rows with one header for both
+ * kinds, fields that don't apply to a kind are left empty:
+ *
+ *   record      "game" or "series"
+ *   player1     plays first in a game, is listed first in a series
+ *   player2
+ *   rows, columns, winNumber, timeLimit    of a game only
+ *   timeControl  of a game only, the game clock ("60+0.5"), empty
+ *               (null in JSON) with timeLimit seconds per move
+ *   result      1 - player1 wins, 2 - player2 wins, 0 - tie, -1 - aborted
+ *   moves       moves made, in the game or all games of the series
+ *   milliseconds  how long the game or all games of the series took
+ *   games, wins1, wins2, ties              of a series only
+ *
+ * The file is appended to, so a resumed tournament adds to
+ * the records of the run it resumes.
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ResultsWriter implements AutoCloseable {
+	private static final String CSV_HEADER = "record,player1,player2,rows,columns,winNumber,timeLimit,"
+			+ "timeControl,result,moves,milliseconds,games,wins1,wins2,ties";
+
+	private final PrintWriter writer;
+	private final boolean csv;
+
+	public ResultsWriter(File file) throws IOException {
+		csv = file.getName().endsWith(".csv");
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null) {
+			directory.mkdirs();
+		}
+		boolean empty = !file.exists() || file.length() == 0;
+		writer = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		if (csv && empty) {
+			writer.println(CSV_HEADER);
+		}
+	}
+
+	/**
+	 * Writes a game and pushes it to the file.
+	 */
+	public synchronized void writeGame(GameRecord record) {
+		if (csv) {
+			writer.println("game," + record.getPlayer1() + "," + record.getPlayer2() + ","
+					+ record.getBoardRows() + "," + record.getBoardColumns() + ","
+					+ record.getWinNumber() + "," + record.getTimeLimit() + ","
+					+ (record.getTimeControl() == null ? "" : record.getTimeControl().toString()) + ","
+					+ record.getResult() + "," + record.getMoves() + "," + record.getMilliseconds() + ",,,,");
+		}
+		else {
+			writer.println("{\"record\":\"game\",\"player1\":" + quote(record.getPlayer1())
+					+ ",\"player2\":" + quote(record.getPlayer2())
+					+ ",\"rows\":" + record.getBoardRows() + ",\"columns\":" + record.getBoardColumns()
+					+ ",\"winNumber\":" + record.getWinNumber() + ",\"timeLimit\":" + record.getTimeLimit()
+					+ ",\"timeControl\":" + (record.getTimeControl() == null ? "null" : quote(record.getTimeControl().toString()))
+					+ ",\"result\":" + record.getResult() + ",\"moves\":" + record.getMoves()
+					+ ",\"milliseconds\":" + record.getMilliseconds() + "}");
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Writes the record of a battle, summed up from its games (which were
+	 * written by writeGame as they ended), and pushes it to the file.
+	 */
+	public synchronized void writeSeries(String player1, String player2, int result, List<GameRecord> games) {
+		int moves = 0;
+		long milliseconds = 0;
+		int wins1 = 0;
+		int wins2 = 0;
+		int ties = 0;
+		for (GameRecord game : games) {
+			moves += game.getMoves();
+			milliseconds += game.getMilliseconds();
+			// Players swap colours between games, see whose win it was
+			boolean swapped = !game.getPlayer1().equals(player1);
+			if (game.getResult() == 0) {
+				++ties;
+			}
+			else if (game.getResult() == (swapped ? 2 : 1)) {
+				++wins1;
+			}
+			else if (game.getResult() == (swapped ? 1 : 2)) {
+				++wins2;
+			}
+		}
+		if (csv) {
+			writer.println("series," + player1 + "," + player2 + ",,,,,," + result + "," + moves + ","
+					+ milliseconds + "," + games.size() + "," + wins1 + "," + wins2 + "," + ties);
+		}
+		else {
+			writer.println("{\"record\":\"series\",\"player1\":" + quote(player1)
+					+ ",\"player2\":" + quote(player2) + ",\"result\":" + result
+					+ ",\"moves\":" + moves + ",\"milliseconds\":" + milliseconds
+					+ ",\"games\":" + games.size() + ",\"wins1\":" + wins1
+					+ ",\"wins2\":" + wins2 + ",\"ties\":" + ties + "}");
+		}
+		writer.flush();
+	}
+
+	@Override
+	public void close() {
+		writer.close();
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
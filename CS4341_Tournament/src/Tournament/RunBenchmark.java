@@ -0,0 +1,178 @@
+/**
+ * Measures how fast the building blocks of players run, so that changes
+ * to them can be compared. Prints one line per benchmark.
+ *
+ * Benchmarks:
+ *   playouts  random games per second and per core with PlayoutEngine,
+ *             next to the same games played on a StateTree and judged
+ *             with Referee.checkForWinner
+ *   games     games per second the referee plays between two SimplePlayers,
+ *             with the executor and with fast dispatch
+ *
+ * Options:
+ *   --seconds N   how long every benchmark runs (default 3)
+ *   --threads N   threads for the parallel runs (default: all cores)
+ */
+
+package Tournament;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Players.Player;
+import Players.SimplePlayer;
+import Referee.Referee;
+import Referee.RefereeBoard;
+import Utilities.Geometry;
+import Utilities.PlayoutEngine;
+import Utilities.StateTree;
+
+public class RunBenchmark {
+	private static final Geometry[] GEOMETRIES = {
+		new Geometry(6, 7, 4), new Geometry(8, 7, 5), new Geometry(12, 12, 5)
+	};
+	private static final int PLAYOUTS_PER_MOVE = 256;
+	private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	public static void main(String[] args) {
+		double seconds = 3;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length - 1; ++i) {
+			if (args[i].equals("--seconds")) {
+				seconds = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("--threads")) {
+				threads = Integer.parseInt(args[++i]);
+			}
+		}
+		long duration = (long) (seconds * 1e9);
+		for (Geometry geometry : GEOMETRIES) {
+			double reference = referencePlayouts(geometry, duration);
+			double single = enginePlayouts(new PlayoutEngine(geometry.rows, geometry.columns,
+					geometry.winNumber, 1), geometry, duration);
+			double parallel = parallelPlayouts(geometry, duration, threads);
+			PlayoutEngine engine = new PlayoutEngine(geometry.rows, geometry.columns, geometry.winNumber, 1);
+			System.out.printf("playouts %-8s %-9s StateTree %,10.0f/s/core | engine %,10.0f/s/core"
+					+ " | %d threads %,10.0f/s/core (%.1fx)%n",
+					geometry, engine.usesBitboards() ? "bitboard" : "packed", reference, single,
+					threads, parallel / threads, single / reference);
+		}
+		for (Geometry geometry : GEOMETRIES) {
+			double executor = refereeGames(geometry, duration, false);
+			double fast = refereeGames(geometry, duration, true);
+			System.out.printf("games    %-8s executor %,10.0f/s | fast dispatch %,10.0f/s (%.1fx)%n",
+					geometry, executor, fast, fast / executor);
+		}
+	}
+
+	/**
+	 * Games per second of one referee, between two SimplePlayers.
+	 */
+	private static double refereeGames(Geometry geometry, long duration, boolean fastDispatch) {
+		Referee referee = new Referee();
+		referee.setOut(NULL_OUT);
+		referee.setFastDispatch(fastDispatch);
+		Player player1 = new SimplePlayer("SimplePlayer", 1, 1);
+		Player player2 = new SimplePlayer("SimplePlayer", 2, 1);
+		player1.init(geometry);
+		player2.init(geometry);
+		referee.initMatch(geometry.rows, geometry.columns, geometry.winNumber, 1, player1, player2);
+		long games = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			referee.judge();
+			++games;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < duration);
+		return games / (elapsed / 1e9);
+	}
+
+	/**
+	 * Playouts per second of one engine.
+	 */
+	private static double enginePlayouts(PlayoutEngine engine, Geometry geometry, long duration) {
+		StateTree position = newBoard(geometry);
+		int[] moves = new int[2 * geometry.columns];
+		int[] wins = new int[moves.length];
+		int[] losses = new int[moves.length];
+		int[] draws = new int[moves.length];
+		long playouts = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			playouts += (long) engine.run(position, PLAYOUTS_PER_MOVE, moves, wins, losses, draws) * PLAYOUTS_PER_MOVE;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < duration);
+		return playouts / (elapsed / 1e9);
+	}
+
+	/**
+	 * Playouts per second of all threads together, one engine per thread.
+	 */
+	private static double parallelPlayouts(Geometry geometry, long duration, int threads) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		PlayoutEngine engine = new PlayoutEngine(geometry.rows, geometry.columns, geometry.winNumber, 1);
+		List<Future<Double>> futures = new ArrayList<>();
+		for (int i = 0; i < threads; ++i) {
+			PlayoutEngine own = engine.split();
+			futures.add(pool.submit(() -> enginePlayouts(own, geometry, duration)));
+		}
+		double total = 0;
+		for (Future<Double> future : futures) {
+			try {
+				total += future.get();
+			} catch (InterruptedException | ExecutionException e) {
+				e.printStackTrace();
+			}
+		}
+		pool.shutdown();
+		return total;
+	}
+
+	/**
+	 * Playouts per second the straightforward way: random moves on a StateTree,
+	 * checking the whole board after every move.
+	 */
+	private static double referencePlayouts(Geometry geometry, long duration) {
+		StateTree position = newBoard(geometry);
+		StateTree board = newBoard(geometry);
+		SplittableRandom random = new SplittableRandom(1);
+		int[] moves = new int[2 * geometry.columns];
+		long playouts = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			board.copyFrom(position);
+			int winner = 0;
+			while (winner == 0) {
+				int count = board.generateMoves(moves);
+				if (count == 0) {
+					break;
+				}
+				board.makeMove(moves[random.nextInt(count)]);
+				winner = Referee.checkForWinner(board);
+			}
+			++playouts;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < duration);
+		return playouts / (elapsed / 1e9);
+	}
+
+	private static StateTree newBoard(Geometry geometry) {
+		StateTree board = new RefereeBoard(geometry.rows, geometry.columns, geometry.winNumber, 1, false, false, null);
+		board.setOut(NULL_OUT);
+		return board;
+	}
+}
@@ -0,0 +1,316 @@
+/**
+ * This plays games between two players on many threads and
+ * records every position with the game's result in a
+ * position file (see PositionWriter), e.g. to tune the
+ * heuristics of a player.
+ *
+ * Every game starts with a number of random drops chosen from
+ * the seed and the game's number, so runs are repeatable (as
+ * far as the players are) and games differ from each other.
+ * The random part is not recorded. Players swap colours every
+ * game, and geometries take turns. Games are not timed, the
+ * time limit is only passed on to the players, but a move that
+ * takes HANG_FACTOR times as long counts as hung. A game in
+ * which a player hangs or throws is discarded and both players
+ * are replaced with new instances.
+ *
+ * Options:
+ *   --players A B        the two players (default: MinimaxPlayer_crmyers twice)
+ *   --games N            number of games (default 1000)
+ *   --threads N          threads playing games (default: all cores)
+ *   --geometry RxC/W     board geometry, may be repeated (default 6x7/4)
+ *   --random-plies K     random drops at the start of every game (default 4)
+ *   --seed S             seed of the random drops (default 1)
+ *   --time-limit L       time limit in seconds given to the players (default 1)
+ *   --output FILE        position file to write (default selfplay/positions.bin)
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Players.Player;
+import Players.ScoringPlayer;
+import Referee.Referee;
+import Referee.RefereeBoard;
+import Utilities.Geometry;
+import Utilities.Move;
+import Utilities.PlayerRegistry;
+import Utilities.StateTree;
+
+public class RunSelfPlay {
+	private static final int CHUNK_SIZE = 1 << 20; // bytes per chunk of the position file
+	private static final int REPORT_INTERVAL = 10000; // milliseconds between progress reports
+	private static final int HANG_FACTOR = 10; // a move that takes this many time limits counts as hung
+	private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	private String player1 = "MinimaxPlayer_crmyers";
+	private String player2 = "MinimaxPlayer_crmyers";
+	private long games = 1000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private final List<Geometry> geometries = new ArrayList<Geometry>();
+	private int randomPlies = 4;
+	private long seed = 1;
+	private int timeLimit = 1;
+	private File output = new File("selfplay/positions.bin");
+	private PrintStream out = System.out;
+
+	private PlayerRegistry registry;
+	private PositionWriter writer;
+	private final AtomicLong nextGame = new AtomicLong();
+	private final AtomicLong finishedGames = new AtomicLong();
+	private final AtomicLong failedGames = new AtomicLong();
+	private final AtomicLong positions = new AtomicLong();
+
+	public static void main(String[] args) {
+		RunSelfPlay selfPlay = new RunSelfPlay();
+		for (int i = 0; i < args.length - 1; ++i) {
+			if (args[i].equals("--players") && i + 2 < args.length) {
+				selfPlay.player1 = args[++i];
+				selfPlay.player2 = args[++i];
+			}
+			else if (args[i].equals("--games")) {
+				selfPlay.games = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("--threads")) {
+				selfPlay.threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--geometry")) {
+				selfPlay.geometries.add(Geometry.parse(args[++i]));
+			}
+			else if (args[i].equals("--random-plies")) {
+				selfPlay.randomPlies = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--seed")) {
+				selfPlay.seed = Long.parseLong(args[++i]);
+			}
+			else if (args[i].equals("--time-limit")) {
+				selfPlay.timeLimit = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--output")) {
+				selfPlay.output = new File(args[++i]);
+			}
+		}
+		if (selfPlay.geometries.isEmpty()) {
+			selfPlay.geometries.add(new Geometry(6, 7, 4));
+		}
+		try {
+			selfPlay.run();
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+		}
+		System.exit(0); // players may have left non-daemon threads behind
+	}
+
+	public void run() throws IOException, InterruptedException {
+		for (Geometry geometry : geometries) {
+			if (geometry.rows > PositionRecord.MAX_SIDE || geometry.columns > PositionRecord.MAX_SIDE
+					|| 8 + (geometry.rows * geometry.columns + 3) / 4 > CHUNK_SIZE - PositionWriter.CHUNK_HEADER_SIZE) {
+				throw new IllegalArgumentException("Geometry too big to record: " + geometry);
+			}
+		}
+		registry = new PlayerRegistry("Players", new File("players.idx"));
+		registry.addClassPath();
+		registry.addJarDirectory(new File("players"));
+		registry.scan();
+
+		// Players print whatever they like, keep it out of the progress reports
+		out = System.out;
+		System.setOut(NULL_OUT);
+		long start = System.currentTimeMillis();
+		writer = new PositionWriter(output, CHUNK_SIZE, 2 * threads + 2);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; ++i) {
+			futures.add(pool.submit(() -> {
+				playGames();
+				return null;
+			}));
+		}
+		pool.shutdown();
+		while (!pool.awaitTermination(REPORT_INTERVAL, TimeUnit.MILLISECONDS)) {
+			report(start);
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+		writer.close();
+		report(start);
+		out.println("Positions written to " + output.getPath());
+		System.setOut(out);
+	}
+
+	private void report(long start) {
+		double minutes = (System.currentTimeMillis() - start) / 60000.0;
+		long recorded = positions.get();
+		out.printf("%d/%d games (%d failed), %d positions, %.0f positions/min%n", finishedGames.get(), games,
+				failedGames.get(), recorded, recorded / Math.max(minutes, 1e-9));
+	}
+
+	/**
+	 * Plays games until there are none left, on the calling thread.
+	 */
+	private void playGames() throws Exception {
+		Player[] players = { registry.newPlayer(player1, 1, timeLimit), registry.newPlayer(player2, 2, timeLimit) };
+		ExecutorService moveService = newMoveService();
+		Map<Geometry, StateTree[]> boards = new HashMap<Geometry, StateTree[]>(); // game, copy for players, empty
+		Geometry[] playerGeometries = new Geometry[2];
+		List<PositionRecord> records = new ArrayList<PositionRecord>();
+		PositionWriter.Chunk chunk = writer.takeChunk();
+		try {
+			long game;
+			while ((game = nextGame.getAndIncrement()) < games) {
+				Geometry geometry = geometries.get((int) (game % geometries.size()));
+				StateTree[] board = boards.get(geometry);
+				if (board == null) {
+					board = new StateTree[] { newBoard(geometry), newBoard(geometry), newBoard(geometry) };
+					boards.put(geometry, board);
+				}
+				// Player "1" in the options moves first in even games
+				boolean swapped = (game & 1) == 1;
+				int count;
+				try {
+					for (int i = 0; i < 2; ++i) {
+						if (!geometry.equals(playerGeometries[i])) {
+							players[i].init(geometry);
+							playerGeometries[i] = geometry;
+						}
+					}
+					players[0].newGame(swapped ? 2 : 1);
+					players[1].newGame(swapped ? 1 : 2);
+					Player first = swapped ? players[1] : players[0];
+					Player second = swapped ? players[0] : players[1];
+					count = playGame(board[0], board[1], board[2], first, second,
+							new SplittableRandom(seed + game * 0x9E3779B97F4A7C15L), records, moveService);
+				} catch (ExecutionException | TimeoutException | RuntimeException e) {
+					// A player may still be stuck in its move or be left half-way through one,
+					// so its thread is abandoned and both players start over as new instances
+					System.err.println("Game " + game + " discarded: " + e);
+					failedGames.incrementAndGet();
+					moveService.shutdownNow();
+					moveService = newMoveService();
+					boards.remove(geometry); // the abandoned thread may still write into the player's copy
+					for (int i = 0; i < 2; ++i) {
+						closePlayer(players[i]);
+						players[i] = registry.newPlayer(i == 0 ? player1 : player2, i + 1, timeLimit);
+						playerGeometries[i] = null;
+					}
+					continue;
+				}
+				for (int i = 0; i < count; ++i) {
+					while (!chunk.add(records.get(i))) {
+						writer.submit(chunk);
+						chunk = writer.takeChunk();
+					}
+				}
+				positions.addAndGet(count);
+				finishedGames.incrementAndGet();
+			}
+		} finally {
+			writer.submit(chunk);
+			moveService.shutdownNow();
+			for (Player player : players) {
+				closePlayer(player);
+			}
+		}
+	}
+
+	// Players move on a thread of their own, so a hung one can be abandoned
+	private static ExecutorService newMoveService() {
+		return Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "selfplay-player");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static void closePlayer(Player player) {
+		try {
+			player.close();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Plays one game and leaves its positions, with the result, at the start of records.
+	 * Players move on moveService.
+	 * @return Number of positions
+	 * @throws ExecutionException A player threw
+	 * @throws TimeoutException A player hung, it may still be running
+	 */
+	private int playGame(StateTree board, final StateTree playerBoard, StateTree emptyBoard, Player first, Player second,
+			SplittableRandom random, List<PositionRecord> records, ExecutorService moveService)
+			throws ExecutionException, TimeoutException, InterruptedException {
+		board.copyFrom(emptyBoard);
+		// Random opening, not recorded
+		for (int ply = 0; ply < randomPlies; ++ply) {
+			int column = random.nextInt(board.columns);
+			while (!board.canDrop(column)) {
+				column = (column + 1) % board.columns;
+			}
+			board.makeMove(Move.encode(false, column));
+			if (Referee.checkForWinner(board) != 0) {
+				return 0; // decided by chance, nothing to learn here
+			}
+		}
+
+		int positions = 0;
+		int winner = 0;
+		while (winner == 0) {
+			final Player player = (board.turn == 1) ? first : second;
+			playerBoard.copyFrom(board);
+			Future<Move> future = moveService.submit(() -> player.getMove(playerBoard));
+			Move move;
+			try {
+				move = future.get((long) HANG_FACTOR * timeLimit, TimeUnit.SECONDS);
+			} finally {
+				future.cancel(true);
+			}
+			if (positions == records.size()) {
+				records.add(new PositionRecord());
+			}
+			float score = (player instanceof ScoringPlayer) ? ((ScoringPlayer) player).getLastScore() : Float.NaN;
+			records.get(positions++).set(board, score);
+			if (move == null || !board.validMove(move)) {
+				winner = 3 - board.turn; // same as the referee: an invalid move loses
+				break;
+			}
+			board.makeMove(move);
+			winner = Referee.checkForWinner(board);
+		}
+		for (int i = 0; i < positions; ++i) {
+			records.get(i).setResult(winner);
+		}
+		return positions;
+	}
+
+	private static StateTree newBoard(Geometry geometry) {
+		StateTree board = new RefereeBoard(geometry.rows, geometry.columns, geometry.winNumber, 1, false, false, null);
+		board.setOut(NULL_OUT);
+		return board;
+	}
+}
@@ -2,6 +2,20 @@
  * This is main class of the program. It is used to
  * execute tournament.
  * 
+ * Options:
+ *   --workers N         play battles in N separate worker JVMs
+ *   --worker-heap SIZE  maximum heap of each worker JVM, e.g. 512m
+ *   --journal FILE      journal of finished battles (default results/tournament.journal),
+ *                       a stopped tournament resumes from it, "none" turns it off
+ *   --results FILE      game and series records (default results/results.jsonl),
+ *                       CSV if FILE ends in ".csv", "none" turns them off
+ *   --gauntlet FILE     only play battles of new or changed players, take the others
+ *                       from the result cache FILE, e.g. results/result_cache.txt
+ *   --sweep FILE        play every battle under all conditions of a sweep matrix
+ *                       (see MatchCondition) in parallel instead of as a series
+ *   --sweep-threads N   conditions of a sweep played at once (default: all cores)
+ *   --monitor-port N    serve the live state of the tournament on http://localhost:N/
+ * 
  * @author Oleksandr Narykov
  *
  */
@@ -26,6 +40,34 @@ public class RunTournament {
 				e1.printStackTrace();
 			}
 			tournament.setOut(out);
+			for (int i = 0; i < args.length - 1; ++i) {
+				if (args[i].equals("--workers")) {
+					tournament.setWorkers(Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--worker-heap")) {
+					tournament.setWorkerHeap(args[++i]);
+				}
+				else if (args[i].equals("--journal")) {
+					String journal = args[++i];
+					tournament.setJournalFile(journal.equals("none") ? null : journal);
+				}
+				else if (args[i].equals("--results")) {
+					String results = args[++i];
+					tournament.setResultsFile(results.equals("none") ? null : results);
+				}
+				else if (args[i].equals("--gauntlet")) {
+					tournament.setResultCacheFile(args[++i]);
+				}
+				else if (args[i].equals("--sweep")) {
+					tournament.setSweepFile(args[++i]);
+				}
+				else if (args[i].equals("--sweep-threads")) {
+					tournament.setSweepThreads(Integer.parseInt(args[++i]));
+				}
+				else if (args[i].equals("--monitor-port")) {
+					tournament.setMonitorPort(Integer.parseInt(args[++i]));
+				}
+			}
 			tournament.run();
 		} catch (ClassNotFoundException | NoSuchMethodException | SecurityException
 				| InstantiationException | IllegalAccessException | IllegalArgumentException
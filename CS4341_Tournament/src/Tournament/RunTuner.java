@@ -0,0 +1,311 @@
+/**
+ * This tunes the weights of PathHeuristic (the heuristic of
+ * MinimaxPlayer_crmyers) on positions recorded by RunSelfPlay,
+ * Texel style: the heuristic's score of a position, squashed
+ * with a sigmoid, should predict the result of the game for the
+ * player to move (1 win, 0.5 tie, 0 loss). First the scale of
+ * the sigmoid is fitted to the starting weights, then the
+ * weights are moved down the gradient of the mean squared
+ * prediction error with Adam.
+ *
+ * The position files are memory-mapped and the features of
+ * the positions are extracted once, chunk by chunk, on a
+ * fork/join pool. Every step computes the error and gradient
+ * over slices of the positions on the same pool.
+ *
+ * Options:
+ *   --input FILE          position file, may be repeated (default selfplay/positions.bin)
+ *   --output FILE         weights file to write (default weights/MinimaxPlayer_crmyers.txt)
+ *   --start FILE          weights to start from (default: the output file if it exists)
+ *   --iterations N        gradient steps (default 500)
+ *   --learning-rate R     Adam step size (default 2)
+ *   --threads N           fork/join parallelism (default: all cores)
+ */
+
+package Tournament;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import Referee.RefereeBoard;
+import Utilities.Geometry;
+import Utilities.PathHeuristic;
+import Utilities.StateTree;
+
+public class RunTuner {
+	private static final int SLICE = 16384; // positions per fork/join leaf
+	private static final int MIN_LENGTH = 2; // shortest run the heuristic scores
+
+	private final List<File> inputs = new ArrayList<File>();
+	private File output = new File("weights/MinimaxPlayer_crmyers.txt");
+	private File start = null;
+	private int iterations = 500;
+	private double learningRate = 2;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// Features of position i are features[i * lengths ... (i + 1) * lengths - 1], one per run length
+	private int positions;
+	private int lengths;
+	private float[] features;
+	private float[] targets;
+	private ForkJoinPool pool;
+
+	public static void main(String[] args) {
+		RunTuner tuner = new RunTuner();
+		for (int i = 0; i < args.length - 1; ++i) {
+			if (args[i].equals("--input")) {
+				tuner.inputs.add(new File(args[++i]));
+			}
+			else if (args[i].equals("--output")) {
+				tuner.output = new File(args[++i]);
+			}
+			else if (args[i].equals("--start")) {
+				tuner.start = new File(args[++i]);
+			}
+			else if (args[i].equals("--iterations")) {
+				tuner.iterations = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("--learning-rate")) {
+				tuner.learningRate = Double.parseDouble(args[++i]);
+			}
+			else if (args[i].equals("--threads")) {
+				tuner.threads = Integer.parseInt(args[++i]);
+			}
+		}
+		if (tuner.inputs.isEmpty()) {
+			tuner.inputs.add(new File("selfplay/positions.bin"));
+		}
+		try {
+			tuner.run();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void run() throws IOException {
+		pool = new ForkJoinPool(threads);
+		long startTime = System.currentTimeMillis();
+		load();
+		System.out.printf("%d positions loaded in %.1f s%n", positions, (System.currentTimeMillis() - startTime) / 1000.0);
+		if (positions == 0) {
+			return;
+		}
+
+		if (start == null && output.exists()) {
+			start = output;
+		}
+		PathHeuristic heuristic = (start != null) ? PathHeuristic.load(start) : new PathHeuristic();
+		double[] weights = new double[lengths];
+		for (int l = 0; l < lengths; ++l) {
+			weights[l] = heuristic.getWeight(MIN_LENGTH + l);
+		}
+
+		double scale = fitScale(weights);
+		double error = pool.invoke(new Gradient(weights, scale, 0, positions))[lengths] / positions;
+		System.out.printf("sigmoid scale %.6g, starting error %.6f%n", scale, error);
+
+		// Adam
+		double[] moment = new double[lengths];
+		double[] velocity = new double[lengths];
+		double beta1 = 0.9;
+		double beta2 = 0.999;
+		for (int step = 1; step <= iterations; ++step) {
+			double[] gradient = pool.invoke(new Gradient(weights, scale, 0, positions));
+			error = gradient[lengths] / positions;
+			for (int l = 0; l < lengths; ++l) {
+				double g = gradient[l] / positions;
+				moment[l] = beta1 * moment[l] + (1 - beta1) * g;
+				velocity[l] = beta2 * velocity[l] + (1 - beta2) * g * g;
+				double corrected = moment[l] / (1 - Math.pow(beta1, step));
+				double variance = velocity[l] / (1 - Math.pow(beta2, step));
+				weights[l] -= learningRate * corrected / (Math.sqrt(variance) + 1e-12);
+			}
+			if (step % 50 == 0 || step == iterations) {
+				System.out.printf("step %d, error %.6f%n", step, error);
+			}
+		}
+
+		for (int l = 0; l < lengths; ++l) {
+			heuristic.setWeight(MIN_LENGTH + l, weights[l]);
+			System.out.printf("length %d: %.3f%n", MIN_LENGTH + l, weights[l]);
+		}
+		heuristic.save(output, MIN_LENGTH, MIN_LENGTH + lengths - 1, String.format(
+				"tuned on %d positions, error %.6f, sigmoid scale %.6g", positions, error, scale));
+		System.out.printf("Weights written to %s in %.1f s%n", output.getPath(),
+				(System.currentTimeMillis() - startTime) / 1000.0);
+	}
+
+	/**
+	 * Maps the position files and extracts the features of every position.
+	 */
+	private void load() throws IOException {
+		List<PositionReader.Chunk> chunks = new ArrayList<PositionReader.Chunk>();
+		for (File input : inputs) {
+			chunks.addAll(PositionReader.read(input));
+		}
+		int[] offsets = new int[chunks.size() + 1];
+		int maxWinNumber = MIN_LENGTH;
+		PositionRecord record = new PositionRecord();
+		for (int c = 0; c < chunks.size(); ++c) {
+			long end = (long) offsets[c] + chunks.get(c).getCount();
+			if (end > Integer.MAX_VALUE / PathHeuristic.MAX_LENGTH) {
+				throw new IOException("Too many positions");
+			}
+			offsets[c + 1] = (int) end;
+			// The longest run with a weight of its own depends on the geometries in the file
+			ByteBuffer data = chunks.get(c).getData();
+			for (int i = 0; i < chunks.get(c).getCount(); ++i) {
+				record.read(data);
+				maxWinNumber = Math.max(maxWinNumber, record.getWinNumber());
+			}
+		}
+		positions = offsets[chunks.size()];
+		lengths = Math.min(maxWinNumber, PathHeuristic.MAX_LENGTH) - MIN_LENGTH + 1;
+		features = new float[positions * lengths];
+		targets = new float[positions];
+		pool.invoke(new Extract(chunks, offsets, 0, chunks.size()));
+	}
+
+	/**
+	 * Squashes a score into a predicted result.
+	 */
+	private static double sigmoid(double score) {
+		return 1 / (1 + Math.exp(-score));
+	}
+
+	/**
+	 * The scale of the sigmoid with the smallest error for the given weights
+	 * (golden section search over its logarithm).
+	 */
+	private double fitScale(double[] weights) {
+		double low = -10;
+		double high = 1;
+		double ratio = (Math.sqrt(5) - 1) / 2;
+		for (int i = 0; i < 60; ++i) {
+			double a = high - ratio * (high - low);
+			double b = low + ratio * (high - low);
+			double errorA = pool.invoke(new Gradient(weights, Math.pow(10, a), 0, positions))[lengths];
+			double errorB = pool.invoke(new Gradient(weights, Math.pow(10, b), 0, positions))[lengths];
+			if (errorA < errorB) {
+				high = b;
+			}
+			else {
+				low = a;
+			}
+		}
+		return Math.pow(10, (low + high) / 2);
+	}
+
+	/**
+	 * Extracts the features of the positions of a range of chunks.
+	 */
+	private class Extract extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<PositionReader.Chunk> chunks;
+		private final int[] offsets;
+		private final int from;
+		private final int to;
+
+		Extract(List<PositionReader.Chunk> chunks, int[] offsets, int from, int to) {
+			this.chunks = chunks;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Extract(chunks, offsets, from, middle), new Extract(chunks, offsets, middle, to));
+				return;
+			}
+			Map<Geometry, StateTree> boards = new HashMap<Geometry, StateTree>();
+			PositionRecord record = new PositionRecord();
+			int[][] counts = new int[2][0];
+			for (int c = from; c < to; ++c) {
+				ByteBuffer data = chunks.get(c).getData();
+				for (int i = offsets[c]; i < offsets[c + 1]; ++i) {
+					record.read(data);
+					Geometry geometry = new Geometry(record.getRows(), record.getColumns(), record.getWinNumber());
+					StateTree board = boards.get(geometry);
+					if (board == null) {
+						board = new RefereeBoard(geometry.rows, geometry.columns, geometry.winNumber, 1, false, false, null);
+						boards.put(geometry, board);
+					}
+					int side = Math.max(geometry.rows, geometry.columns) + 1;
+					if (counts[0].length < side) {
+						counts = new int[2][side];
+					}
+					record.copyTo(board);
+					PathHeuristic.countPaths(board, counts);
+					int player = record.getTurn();
+					int longest = Math.min(geometry.winNumber, MIN_LENGTH + lengths - 1);
+					for (int length = MIN_LENGTH; length <= longest; ++length) {
+						features[i * lengths + length - MIN_LENGTH] = (float) PathHeuristic.feature(counts, player, length);
+					}
+					int result = record.getResult();
+					targets[i] = (result == player) ? 1f : (result == 3) ? 0.5f : 0f;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gradient of the summed squared error over a range of positions,
+	 * with the error itself in the last entry.
+	 */
+	private class Gradient extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = 1L;
+		private final double[] weights;
+		private final double scale;
+		private final int from;
+		private final int to;
+
+		Gradient(double[] weights, double scale, int from, int to) {
+			this.weights = weights;
+			this.scale = scale;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected double[] compute() {
+			if (to - from > SLICE) {
+				int middle = (from + to) >>> 1;
+				Gradient left = new Gradient(weights, scale, from, middle);
+				left.fork();
+				double[] sum = new Gradient(weights, scale, middle, to).compute();
+				double[] other = left.join();
+				for (int l = 0; l <= lengths; ++l) {
+					sum[l] += other[l];
+				}
+				return sum;
+			}
+			double[] sum = new double[lengths + 1];
+			for (int i = from; i < to; ++i) {
+				int base = i * lengths;
+				double score = 0;
+				for (int l = 0; l < lengths; ++l) {
+					score += weights[l] * features[base + l];
+				}
+				double predicted = sigmoid(scale * score);
+				double difference = targets[i] - predicted;
+				sum[lengths] += difference * difference;
+				double factor = -2 * difference * predicted * (1 - predicted) * scale;
+				for (int l = 0; l < lengths; ++l) {
+					sum[l] += factor * features[base + l];
+				}
+			}
+			return sum;
+		}
+	}
+}
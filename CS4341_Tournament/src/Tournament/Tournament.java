@@ -9,31 +9,52 @@
  */
 
 package Tournament;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.lang.reflect.Constructor;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import Players.Player;
+import Players.SearchStatistics;
+import Referee.PonderPolicy;
 import Referee.Referee;
-import Utilities.ClassFinder;
+import Referee.RefereeBoard;
+import Utilities.Geometry;
+import Utilities.Move;
+import Utilities.PlayerRegistry;
+import Utilities.StateTree;
 import Utilities.StaticExceptionCounter;
+import Utilities.TimeControl;
 
 public class Tournament {
 	// Match parameter
@@ -42,13 +63,48 @@ public class Tournament {
 	private int battlesToDecreaseTimeLimit = 20;
 	private int timesDecreased = 0;
 	private int timeLimit = 10;
+	private TimeControl timeControl = null; // game clock instead of timeLimit per move, e.g. TimeControl.parse("60+0.5")
 	private int boardRows = 6;
 	private int boardColumns = 7;
 	private int winNumber = 4;
 	private int numberOfChangingParams = 3;
 	private int battleDurationLimit = 3600;
+	private long moveAllocationLimit = 0; // bytes per move, 0 - no limit
+	private long gameAllocationLimit = 0; // bytes per game, 0 - no limit
+	private PonderPolicy ponderPolicy = PonderPolicy.DISABLED;
+	private boolean reusePlayers = true; // keep one instance of each player for all its games
+	private int warmUpMoves = 0; // untimed moves a player makes before its first game, 0 - no warm-up
+	private boolean packedBoards = false; // referees store boards with 2 bits per cell
+	private boolean fastDispatch = false; // referees call players on the game's own thread, for very fast players
 	// End of modifications
 	private PrintStream out;
+	private int workers = 0; // number of worker JVMs, 0 plays every battle in this JVM
+	private String workerHeap = null; // maximum heap of each worker JVM, e.g. "512m"
+	private String playerJarDirectory = "players"; // jars with extra players, one per entrant is fine
+	private String playerIndexFile = "players.idx"; // remembers which files contain players between runs
+	private String journalFile = "results/tournament.journal"; // finished battles, to resume a stopped tournament; null - no journal
+	private Journal journal = null;
+	private final Set<String> finishedBattles = new HashSet<String>(); // "player1 player2" of battles taken from the journal
+	private String sweepFile = null; // sweep matrix (see MatchCondition) every battle is played under; null - the usual series
+	private List<MatchCondition> sweep = null;
+	private int sweepThreads = Runtime.getRuntime().availableProcessors(); // conditions of a sweep played at once
+	private final Map<MatchCondition, Crosstable> sweepTables = new LinkedHashMap<MatchCondition, Crosstable>(); // results per condition
+	private String resultCacheFile = null; // gauntlet mode, battles of unchanged players come from this cache; null - play all
+	private ResultCache resultCache = null;
+	private String resultsFile = "results/results.jsonl"; // game and series records, CSV if it ends in ".csv"; null - none
+	private ResultsWriter results = null;
+	private volatile Consumer<GameRecord> gameListener = null; // told every game as soon as it ends, e.g. by a worker
+	private String crosstableFile = "results/crosstable.csv";
+	private Crosstable crosstable = null;
+	private final TournamentMonitor monitor = new TournamentMonitor();
+	private int monitorPort = 0; // local HTTP port of the live monitor (see MonitorServer), 0 - none
+	private int snapshotInterval = 60; // seconds between two leaderboard snapshots, 0 - no snapshots
+	private String snapshotFile = "results/leaderboard.txt";
+	private PlayerRegistry registry = null;
+	private final HashMap<String, Player> playerInstances = new HashMap<String, Player>();
+	private final HashMap<Player, Geometry> playerGeometries = new HashMap<Player, Geometry>();
+	// Search statistics reported by the players, summed per player and geometry
+	private final Map<String, Map<Geometry, SearchStatistics>> searchStatistics = new TreeMap<String, Map<Geometry, SearchStatistics>>();
 	
 	public PrintStream getOut() {
 		return out;
@@ -58,34 +114,119 @@ public class Tournament {
 		this.out = out;
 	}
 
+	public int getWorkers() {
+		return workers;
+	}
+
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	public String getWorkerHeap() {
+		return workerHeap;
+	}
+
+	public void setWorkerHeap(String workerHeap) {
+		this.workerHeap = workerHeap;
+	}
+
+	public void setSnapshotInterval(int snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	public String getSweepFile() {
+		return sweepFile;
+	}
+
+	public void setSweepFile(String sweepFile) {
+		this.sweepFile = sweepFile;
+		sweep = null;
+	}
+
+	public void setSweepThreads(int sweepThreads) {
+		this.sweepThreads = sweepThreads;
+	}
+
+	// The conditions of the sweep matrix, null if battles are played as a series
+	List<MatchCondition> getSweep() {
+		if ((sweep == null) && (sweepFile != null)) {
+			try {
+				sweep = MatchCondition.readMatrix(new File(sweepFile));
+			} catch (IOException | IllegalArgumentException e) {
+				e.printStackTrace();
+				sweepFile = null;
+			}
+		}
+		return sweep;
+	}
+
+	public void setResultCacheFile(String resultCacheFile) {
+		this.resultCacheFile = resultCacheFile;
+	}
+
+	public void setResultsFile(String resultsFile) {
+		this.resultsFile = resultsFile;
+	}
+
+	public void setMonitorPort(int monitorPort) {
+		this.monitorPort = monitorPort;
+	}
+
+	TournamentMonitor getMonitor() {
+		return monitor;
+	}
+
+	public String getJournalFile() {
+		return journalFile;
+	}
+
+	public void setJournalFile(String journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	// Sweeps ask for it from several threads, so it is only published once scanned
+	private synchronized PlayerRegistry getRegistry() {
+		if (registry == null) {
+			PlayerRegistry scanned = new PlayerRegistry("Players", new File(playerIndexFile));
+			scanned.addClassPath();
+			scanned.addJarDirectory(new File(playerJarDirectory));
+			scanned.scan();
+			registry = scanned;
+		}
+		return registry;
+	}
+
 	private List<String> getPlayers() {
-		 List<Class<?>> allClasses = 
-				 ClassFinder.find("Players");
-		 LinkedList<String> players = new LinkedList<String>();			 
-		 
-		 for(Class<? extends Object> klazz : allClasses) {
-			 String name = klazz.getName().split("\\.")[1];
-			 
-			 if (klazz != Player.class && Player.class.isAssignableFrom(klazz)) {
-				 players.add(name);
-			 }
-			 
-		/*	 if(!contains(name) && !name.contains("$")
-				&& !name.contains("Tree")
-				&& !name.contains("MiniMax")
-				&& !name.contains("Board")
-				&& !name.contains("Heuristic")
-				&& !name.contains("Eval")
-				&& !name.contains("Utility")
-				&& !name.contains("Action")) {
-				 
-			 }*/
-		 }
-		 
-		 return players;
-	}
-	
-	private int doBattle(String playerName1, String playerName2) 
+		return new LinkedList<String>(getRegistry().getPlayerNames());
+	}
+	
+	int doBattle(String playerName1, String playerName2) 
+								throws InstantiationException, 
+								IllegalAccessException, IllegalArgumentException, 
+								InvocationTargetException, ClassNotFoundException, 
+								NoSuchMethodException, SecurityException {
+		return doBattle(playerName1, playerName2, null);
+	}
+	
+	// Same as above, but every game played is also appended to gameRecords (if not null)
+	int doBattle(String playerName1, String playerName2, List<GameRecord> gameRecords) 
+								throws InstantiationException, 
+								IllegalAccessException, IllegalArgumentException, 
+								InvocationTargetException, ClassNotFoundException, 
+								NoSuchMethodException, SecurityException {
+		monitor.battleStarted(playerName1, playerName2);
+		try {
+			List<MatchCondition> conditions = getSweep();
+			if (conditions != null) {
+				return playSweep(playerName1, playerName2, conditions, gameRecords);
+			}
+			return playBattle(playerName1, playerName2, gameRecords);
+		} finally {
+			monitor.battleFinished(playerName1, playerName2);
+		}
+	}
+	
+	private int playBattle(String playerName1, String playerName2, List<GameRecord> gameRecords) 
 								throws InstantiationException, 
 								IllegalAccessException, IllegalArgumentException, 
 								InvocationTargetException, ClassNotFoundException, 
@@ -95,20 +236,11 @@ public class Tournament {
 		int initialBoardColumns = boardColumns;
 		int initialWinNumber = winNumber;
 		int initialTimeLimit = timeLimit;
-		String playersPackage = "Players.";
 		
 		boolean dominating = false;
 		int numberOfBattles = 0;
 		int finalResult = 0;
 		
-		Class<?> clazz1 = Class.forName(playersPackage + playerName1);
-		Constructor<?> constructor1 = clazz1.getConstructor(String.class, Integer.TYPE, Integer.TYPE);
-		Class<?> clazz2 = Class.forName(playersPackage + playerName2);
-		
-		//System.out.println(playerName1);
-		//System.out.println(playerName2);
-		
-		Constructor<?> constructor2 = clazz2.getConstructor(String.class, Integer.TYPE, Integer.TYPE);
 		Referee referee1 = new Referee();
 		Referee referee2 = new Referee();
 		PrintStream refereeOut = null;
@@ -119,67 +251,112 @@ public class Tournament {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
 		}
-		referee1.setOut(refereeOut);
-		referee2.setOut(refereeOut);
+		configureReferee(referee1, refereeOut);
+		configureReferee(referee2, refereeOut);
+		referee1.setTimeControl(timeControl);
+		referee2.setTimeControl(timeControl);
 		
 		while ((!dominating) && (numberOfBattles < battlesLimit)){
 			
 			referee1.setWinNumber(winNumber); //CRUTCH!!!
 			referee2.setWinNumber(winNumber); //CRUTCH!!!
-			Player player11 = (Player) constructor1.newInstance(playerName1, 1, timeLimit);
-			Player player12 = (Player) constructor1.newInstance(playerName1, 2, timeLimit);
-			
-			Player player21 = (Player) constructor2.newInstance(playerName2, 1, timeLimit);
-			Player player22 = (Player) constructor2.newInstance(playerName2, 2, timeLimit);
-
-			referee1.initMatch(boardRows, boardColumns, winNumber, timeLimit, player11, player22);
-			Callable<Object> judge1 = new Callable<Object>() {
-			 	public Object call() {
-				  return referee1.judge();
-			 	}
-			};			
+			Player player11 = preparePlayer(playerName1, 1, refereeOut);
+			Player player22 = preparePlayer(playerName2, 2, refereeOut);
 			ExecutorService service = Executors.newSingleThreadExecutor();
 			
-			final Future<Object> future1 = service.submit(judge1);
+			long startTime1 = System.nanoTime();
 			int result1 = -1;
-			try {
-				result1 = (int) future1.get(battleDurationLimit, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
-			} catch (TimeoutException e) {
-				e.printStackTrace();
+			GameRecord record1;
+			if ((player11 != null) && (player22 != null)) {
+				referee1.initMatch(boardRows, boardColumns, winNumber, timeLimit, player11, player22);
+				Callable<Object> judge1 = new Callable<Object>() {
+				 	public Object call() {
+					  return referee1.judge();
+				 	}
+				};			
+				final Future<Object> future1 = service.submit(judge1);
+				try {
+					result1 = (int) future1.get(battleDurationLimit, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+				} catch (TimeoutException e) {
+					e.printStackTrace();
+				}
+				long milliseconds1 = (System.nanoTime() - startTime1) / 1000000L;
+				judge1 = null;
+				releasePlayer(playerName1, player11, (result1 == -1) || referee1.hasFailed(1));
+				releasePlayer(playerName2, player22, (result1 == -1) || referee1.hasFailed(2));
+				record1 = new GameRecord(playerName1, playerName2, boardRows, boardColumns, winNumber, 
+						timeLimit, timeControl, result1, referee1.getMovesMade(), milliseconds1,
+						referee1.getSearchStatistics(1), referee1.getSearchStatistics(2));
+			}
+			else {
+				result1 = getForfeitResult(player11, player22);
+				releasePlayer(playerName1, player11, false);
+				releasePlayer(playerName2, player22, false);
+				record1 = new GameRecord(playerName1, playerName2, boardRows, boardColumns, winNumber, 
+						timeLimit, timeControl, result1, 0, 0);
+			}
+			addSearchStatistics(record1);
+			writeGame(record1);
+			monitor.gamesFinished(1);
+			if (gameRecords != null) {
+				gameRecords.add(record1);
 			}
-			judge1 = null;
 			
-			referee2.initMatch(boardRows, boardColumns, winNumber, timeLimit, player21, player12);
-			Callable<Object> judge2 = new Callable<Object>() {
-			 	public Object call() {
-				  return referee2.judge();
-			 	}
-			};
+			Player player21 = preparePlayer(playerName2, 1, refereeOut);
+			Player player12 = preparePlayer(playerName1, 2, refereeOut);
 			//out.print("| " + result1 + " ");
-			final Future<Object> future2 = service.submit(judge2);
+			long startTime2 = System.nanoTime();
 			int result2 = -1;
-			try {
-				result2 = (int) future2.get(battleDurationLimit, TimeUnit.SECONDS);
+			GameRecord record2;
+			if ((player21 != null) && (player12 != null)) {
+				referee2.initMatch(boardRows, boardColumns, winNumber, timeLimit, player21, player12);
+				Callable<Object> judge2 = new Callable<Object>() {
+				 	public Object call() {
+					  return referee2.judge();
+				 	}
+				};
+				final Future<Object> future2 = service.submit(judge2);
+				try {
+					result2 = (int) future2.get(battleDurationLimit, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+				} catch (TimeoutException e) {
+					e.printStackTrace();
+				}			
+				long milliseconds2 = (System.nanoTime() - startTime2) / 1000000L;
+				judge2 = null;
+				releasePlayer(playerName2, player21, (result2 == -1) || referee2.hasFailed(1));
+				releasePlayer(playerName1, player12, (result2 == -1) || referee2.hasFailed(2));
+				record2 = new GameRecord(playerName2, playerName1, boardRows, boardColumns, winNumber, 
+						timeLimit, timeControl, result2, referee2.getMovesMade(), milliseconds2,
+						referee2.getSearchStatistics(1), referee2.getSearchStatistics(2));
+			}
+			else {
+				result2 = getForfeitResult(player21, player12);
+				releasePlayer(playerName2, player21, false);
+				releasePlayer(playerName1, player12, false);
+				record2 = new GameRecord(playerName2, playerName1, boardRows, boardColumns, winNumber, 
+						timeLimit, timeControl, result2, 0, 0);
+			}
+			addSearchStatistics(record2);
+			writeGame(record2);
+			monitor.gamesFinished(1);
+			if (gameRecords != null) {
+				gameRecords.add(record2);
+			}
 			//	out.print(" " + result2 + " |");
-				if (result2 == 1) {
-					result2 = 2;
-				}
-				else if (result2 == 2){
-					result2 = 1;
-				}
-					
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
-			} catch (TimeoutException e) {
-				e.printStackTrace();
-			}			
-			judge2 = null;
+			if (result2 == 1) {
+				result2 = 2;
+			}
+			else if (result2 == 2){
+				result2 = 1;
+			}
 			
 			if ((result1 == -1) || (result2 == -1)) {
 				return 0;
@@ -230,6 +407,709 @@ public class Tournament {
 		return finalResult;
 	}
 	
+	// Sets what every referee of this tournament shares
+	private void configureReferee(Referee referee, PrintStream refereeOut) {
+		referee.setOut(refereeOut);
+		referee.setMoveAllocationLimit(moveAllocationLimit);
+		referee.setGameAllocationLimit(gameAllocationLimit);
+		referee.setPonderPolicy(ponderPolicy);
+		referee.setPackedBoards(packedBoards);
+		referee.setFastDispatch(fastDispatch);
+		referee.setMoveObserver(monitor);
+	}
+	
+	// Plays a pair of games, one with each colour, under every condition of the sweep, 
+	// sweepThreads conditions at once. Each condition gets its own referee, log and player 
+	// instances, so nothing is shared between them. A condition is won like a battle: by 
+	// winning both games or one and tying the other. The player that got more points from 
+	// the conditions wins the battle. gameRecords gets the two games of every condition, 
+	// in the order of the sweep. Like in a series every game may take battleDurationLimit 
+	// seconds, a game that takes longer is aborted. A condition that doesn't finish in 
+	// three times that (its two games and getting the players ready) is aborted as a whole,
+	// its games that didn't finish by then are recorded as aborted.
+	private int playSweep(final String playerName1, final String playerName2, 
+								List<MatchCondition> conditions, List<GameRecord> gameRecords) {
+		// Daemon threads, a condition that never ends must not keep the JVM alive
+		ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Math.min(sweepThreads, conditions.size())), 
+				runnable -> {
+					Thread thread = new Thread(runnable, "sweep");
+					thread.setDaemon(true);
+					return thread;
+				});
+		int points1 = 0;
+		int points2 = 0;
+		try {
+			List<Future<GameRecord[]>> futures = new ArrayList<Future<GameRecord[]>>();
+			List<GameRecord[]> conditionGames = new ArrayList<GameRecord[]>();
+			for (final MatchCondition condition : conditions) {
+				final GameRecord[] games = new GameRecord[2];
+				conditionGames.add(games);
+				futures.add(service.submit(() -> playCondition(playerName1, playerName2, condition, games)));
+			}
+			for (int i = 0; i < conditions.size(); ++i) {
+				GameRecord[] games = conditionGames.get(i);
+				try {
+					// A condition starts no later than this wait does, so it always gets its full time
+					futures.get(i).get(3L * battleDurationLimit, TimeUnit.SECONDS);
+				} catch (InterruptedException | ExecutionException | TimeoutException e) {
+					e.printStackTrace();
+					futures.get(i).cancel(true);
+					synchronized (games) {
+						if (games[0] == null) {
+							games[0] = abortedGame(playerName1, playerName2, conditions.get(i));
+							writeGame(games[0]);
+						}
+						if (games[1] == null) {
+							games[1] = abortedGame(playerName2, playerName1, conditions.get(i));
+							writeGame(games[1]);
+						}
+					}
+				}
+				for (GameRecord game : games) {
+					addSearchStatistics(game);
+					if (gameRecords != null) {
+						gameRecords.add(game);
+					}
+				}
+				switch (getConditionResult(games[0].getResult(), games[1].getResult())) {
+					case 1:
+						points1 += 3;
+						break;
+					case 2:
+						points2 += 3;
+						break;
+					default:
+						points1 += 1;
+						points2 += 1;
+				}
+			}
+		} finally {
+			service.shutdownNow();
+		}
+		return (points1 > points2) ? 1 : (points1 < points2) ? 2 : 0;
+	}
+	
+	// The result of a condition from its two games, the second one with the colours swapped
+	static int getConditionResult(int result1, int result2) {
+		if (result2 == 1) {
+			result2 = 2;
+		}
+		else if (result2 == 2) {
+			result2 = 1;
+		}
+		if ((result1 == -1) || (result2 == -1)) {
+			return 0;
+		}
+		if (result1 == 0) {
+			return result2;
+		}
+		if ((result2 == 0) || (result2 == result1)) {
+			return result1;
+		}
+		return 0;
+	}
+	
+	// Plays the two games of a condition into games, which playSweep may fill with aborted
+	// games at any time; a game whose slot is already filled is not played or recorded
+	private GameRecord[] playCondition(String playerName1, String playerName2, MatchCondition condition, 
+								GameRecord[] games) throws FileNotFoundException {
+		Geometry geometry = condition.geometry;
+		int conditionTimeLimit = (condition.timeControl != null) ? timeLimit : condition.timeLimit;
+		PrintStream refereeOut = new PrintStream(new FileOutputStream("log/" + playerName1 + "_vs_" + playerName2 
+				+ "_" + condition.toFileName() + "_log.txt", true));
+		Referee referee = null;
+		try {
+			for (int game = 0; game < 2; ++game) {
+				synchronized (games) {
+					if (games[game] != null) {
+						break; // the condition was aborted
+					}
+				}
+				if (referee == null) {
+					referee = new Referee();
+					configureReferee(referee, refereeOut);
+					referee.setTimeControl(condition.timeControl);
+					referee.setPopOut(condition.popOut);
+				}
+				String first = (game == 0) ? playerName1 : playerName2;
+				String second = (game == 0) ? playerName2 : playerName1;
+				Player player1 = newSweepPlayer(first, 1, geometry, conditionTimeLimit, refereeOut);
+				Player player2 = newSweepPlayer(second, 2, geometry, conditionTimeLimit, refereeOut);
+				int result = -1;
+				long startTime = System.nanoTime();
+				boolean ready = (player1 != null) && (player2 != null);
+				if (ready) {
+					referee.initMatch(geometry.rows, geometry.columns, geometry.winNumber, conditionTimeLimit, player1, player2);
+					result = judgeInTime(referee, refereeOut);
+				}
+				else {
+					result = getForfeitResult(player1, player2);
+				}
+				long milliseconds = (System.nanoTime() - startTime) / 1000000L;
+				closeSweepPlayer(player1);
+				closeSweepPlayer(player2);
+				GameRecord record;
+				if (!ready) {
+					record = new GameRecord(first, second, geometry.rows, geometry.columns, geometry.winNumber, 
+							conditionTimeLimit, condition.timeControl, result, 0, milliseconds);
+				}
+				else if (result == -1) {
+					// The game may still be running, its referee is left to it
+					record = new GameRecord(first, second, geometry.rows, geometry.columns, geometry.winNumber, 
+							conditionTimeLimit, condition.timeControl, -1, referee.getMovesMade(), milliseconds);
+					referee = null;
+				}
+				else {
+					record = new GameRecord(first, second, geometry.rows, geometry.columns, geometry.winNumber, 
+							conditionTimeLimit, condition.timeControl, result, referee.getMovesMade(), milliseconds, 
+							referee.getSearchStatistics(1), referee.getSearchStatistics(2));
+				}
+				synchronized (games) {
+					if (games[game] != null) {
+						break; // the condition was aborted while the game was played
+					}
+					games[game] = record;
+					writeGame(record);
+				}
+				monitor.gamesFinished(1);
+			}
+		} finally {
+			refereeOut.println();
+			refereeOut.println("-----");
+			refereeOut.println();
+			refereeOut.close();
+		}
+		return games;
+	}
+	
+	// Plays the referee's game on a thread of its own, -1 if it fails or takes longer than battleDurationLimit
+	private int judgeInTime(Referee referee, PrintStream refereeOut) {
+		ExecutorService service = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "sweep-game");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			return service.submit(referee::judge).get(battleDurationLimit, TimeUnit.SECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			e.printStackTrace(refereeOut);
+			return -1;
+		} finally {
+			service.shutdownNow();
+		}
+	}
+	
+	// The result of a game that isn't played because a player couldn't get ready for it (null):
+	// that player forfeits it, it is a tie if neither could
+	private static int getForfeitResult(Player player1, Player player2) {
+		if (player1 == null) {
+			return (player2 == null) ? 0 : 2;
+		}
+		return 1;
+	}
+	
+	// A new instance of the player for one game of a sweep, null if it can't be created or initialized
+	private Player newSweepPlayer(String playerName, int turn, Geometry geometry, int conditionTimeLimit, 
+								PrintStream refereeOut) {
+		try {
+			Player player = getRegistry().newPlayer(playerName, turn, conditionTimeLimit);
+			player.init(geometry);
+			player.newGame(turn);
+			return player;
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException 
+				| InvocationTargetException | RuntimeException e) {
+			e.printStackTrace(refereeOut);
+			refereeOut.println(playerName + " failed with exception while getting ready for a game and forfeits it");
+			StaticExceptionCounter.addException(playerName);
+			return null;
+		}
+	}
+	
+	private static void closeSweepPlayer(Player player) {
+		if (player == null) {
+			return;
+		}
+		try {
+			player.close();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private GameRecord abortedGame(String playerName1, String playerName2, MatchCondition condition) {
+		return new GameRecord(playerName1, playerName2, condition.geometry.rows, condition.geometry.columns, 
+				condition.geometry.winNumber, (condition.timeControl != null) ? timeLimit : condition.timeLimit, 
+				condition.timeControl, -1, 0, 0);
+	}
+	
+	// Returns the player that should play the next game as the given turn,
+	// creating, initializing and warming it up as needed. Returns null if it
+	// fails to get ready, then it forfeits the game (see getForfeitResult).
+	private Player preparePlayer(String playerName, int turn, PrintStream refereeOut)
+								throws ClassNotFoundException, NoSuchMethodException, 
+								IllegalAccessException, InvocationTargetException {
+		Geometry geometry = new Geometry(boardRows, boardColumns, winNumber);
+		Player player = reusePlayers ? playerInstances.get(playerName) : null;
+		boolean created = (player == null);
+		if (created) {
+			player = getRegistry().newPlayer(playerName, turn, timeLimit);
+			if (reusePlayers) {
+				playerInstances.put(playerName, player);
+			}
+		}
+		player.setTimeLimit(timeLimit);
+		try {
+			if (!geometry.equals(playerGeometries.get(player))) {
+				player.init(geometry);
+				playerGeometries.put(player, geometry);
+			}
+			if (created && reusePlayers && warmUpMoves > 0) {
+				warmUp(player, geometry, refereeOut);
+			}
+			player.newGame(turn);
+		} catch (RuntimeException e) {
+			e.printStackTrace(refereeOut);
+			refereeOut.println(playerName + " failed with exception while getting ready for a game and forfeits it");
+			StaticExceptionCounter.addException(playerName);
+			// Its next game gets a new instance
+			releasePlayer(playerName, player, true);
+			return null;
+		}
+		return player;
+	}
+	
+	// Closes a player after its game, unless it is kept for the next games. A player that
+	// failed (timed out, threw, broke a limit or its game was aborted) may still be running
+	// on a thread the referee gave up on, so it is never kept, its next game gets a new one.
+	private void releasePlayer(String playerName, Player player, boolean failed) {
+		if ((player == null) || (reusePlayers && !failed)) {
+			return;
+		}
+		if (playerInstances.get(playerName) == player) {
+			playerInstances.remove(playerName);
+		}
+		playerGeometries.remove(player);
+		try {
+			player.close();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	// Closes every player kept between games
+	void closePlayers() {
+		for (Player player : playerInstances.values()) {
+			try {
+				player.close();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		playerInstances.clear();
+		playerGeometries.clear();
+	}
+	
+	// Lets a new player make a few untimed moves against itself before its first
+	// timed game, so its code is already compiled by the JIT when the clock runs
+	private void warmUp(final Player player, Geometry geometry, PrintStream refereeOut) {
+		final StateTree board = new RefereeBoard(geometry.rows, geometry.columns, geometry.winNumber, 1, false, false, null);
+		board.setOut(new PrintStream(new OutputStream() {
+			@Override public void write(int b) throws IOException {}
+		}));
+		Callable<Object> warmUpGame = new Callable<Object>() {
+			public Object call() {
+				for (int i = 0; (i < warmUpMoves) && (Referee.checkForWinner(board) == 0); ++i) {
+					player.newGame(board.turn);
+					Move move = player.getMove(board);
+					if ((move == null) || !board.validMove(move)) {
+						break;
+					}
+					board.makeMove(move);
+				}
+				return null;
+			}
+		};
+		ExecutorService service = Executors.newSingleThreadExecutor();
+		try {
+			service.submit(warmUpGame).get(battleDurationLimit, TimeUnit.SECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			e.printStackTrace(refereeOut);
+			refereeOut.println(player.getName() + " failed to warm up");
+		} finally {
+			service.shutdownNow();
+		}
+	}
+	
+	// Opens the journal and puts the results of the battles an earlier run
+	// of the same tournament finished into the scheme
+	private void resume(TournamentScheme scheme, List<String> playerNames) {
+		if (journalFile == null) {
+			return;
+		}
+		try {
+			journal = new Journal(new File(journalFile), getConfigFingerprint(playerNames));
+		} catch (ClassNotFoundException | IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		for (Journal.Battle battle : journal.getFinished()) {
+			if (!playerNames.contains(battle.player1) || !playerNames.contains(battle.player2)) {
+				continue;
+			}
+			addResult(scheme, battle.player1, battle.player2, battle.result);
+			finishedBattles.add(battle.player1 + " " + battle.player2);
+			out.println("Resumed battle: " + battle.player1 + " vs " + battle.player2 
+					+ "	| " + Integer.toString(battle.result));
+		}
+	}
+	
+	// The next pairing of the scheme that is not already in the journal or the result cache,
+	// null when all are done. Results found in the cache are counted right away.
+	List<String> getNextCompetitors(TournamentScheme scheme) {
+		List<String> nextMatch;
+		while ((nextMatch = scheme.getNextCompetitors()) != null) {
+			String player1 = nextMatch.get(0);
+			String player2 = nextMatch.get(1);
+			if (finishedBattles.contains(player1 + " " + player2)) {
+				continue;
+			}
+			Integer cached = getCachedResult(player1, player2);
+			if (cached == null) {
+				return nextMatch;
+			}
+			addResult(scheme, player1, player2, cached);
+			journalResult(player1, player2, cached);
+			out.println("Cached battle: " + player1 + " vs " + player2 + "	| " + Integer.toString(cached));
+		}
+		return null;
+	}
+	
+	// Adds the result of a battle that was just played to the scheme, the journal and the result cache
+	void recordResult(TournamentScheme scheme, String player1, String player2, int result) {
+		addResult(scheme, player1, player2, result);
+		journalResult(player1, player2, result);
+		if (resultCache == null) {
+			return;
+		}
+		try {
+			resultCache.put(getRegistry().getFingerprint(player1), getRegistry().getFingerprint(player2), 
+					getConditions(), result);
+		} catch (ClassNotFoundException | IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void journalResult(String player1, String player2, int result) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.add(player1, player2, result);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void openResultCache() {
+		if (resultCacheFile == null) {
+			return;
+		}
+		try {
+			resultCache = new ResultCache(new File(resultCacheFile));
+			out.println("Result cache: " + resultCache.size() + " battles");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	// The cached result of a battle, null if there is none (or no cache)
+	private Integer getCachedResult(String player1, String player2) {
+		if (resultCache == null) {
+			return null;
+		}
+		try {
+			return resultCache.get(getRegistry().getFingerprint(player1), getRegistry().getFingerprint(player2), 
+					getConditions());
+		} catch (ClassNotFoundException | IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	// What the results in the journal depend on: the conditions of the battles
+	// and every player, in order, with its fingerprint
+	String getConfigFingerprint(List<String> playerNames) throws ClassNotFoundException, IOException {
+		CRC32 crc = new CRC32();
+		crc.update(getConditions().getBytes(StandardCharsets.UTF_8));
+		for (String playerName : playerNames) {
+			crc.update((" " + playerName + "=" + getRegistry().getFingerprint(playerName)).getBytes(StandardCharsets.UTF_8));
+		}
+		return Long.toHexString(crc.getValue());
+	}
+	
+	// What a battle's result depends on besides the players: the geometry it starts
+	// with and how that grows, the number of games and the time the players get,
+	// or the conditions of the sweep, then how the referee runs the players and
+	// the engine classes it runs them with
+	String getConditions() throws IOException {
+		String conditions;
+		if (getSweep() != null) {
+			CRC32 crc = new CRC32();
+			crc.update(sweep.toString().getBytes(StandardCharsets.UTF_8));
+			conditions = "sweep-" + Long.toHexString(crc.getValue()) + "/" + timeLimit + "s";
+		}
+		else {
+			conditions = boardRows + "x" + boardColumns + "x" + winNumber + "/" + battlesLimit + "/" + numberOfChangingParams 
+					+ "/" + ((timeControl != null) ? timeControl.toString() : timeLimit + "s-" + battlesToDecreaseTimeLimit);
+		}
+		return conditions + "/" + ponderPolicy + "/" + moveAllocationLimit + "B-" + gameAllocationLimit + "B"
+				+ "/" + (packedBoards ? "packed" : "dense") + "/" + (fastDispatch ? "fast" : "threaded")
+				+ "/" + (reusePlayers ? "reuse-" + warmUpMoves : "fresh")
+				+ "/" + getRegistry().getEngineFingerprint().substring(0, 16);
+	}
+	
+	private void openResults() {
+		if (resultsFile == null) {
+			return;
+		}
+		try {
+			results = new ResultsWriter(new File(resultsFile));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	// Writes a game that just finished to the results file and tells the game listener
+	void writeGame(GameRecord record) {
+		if (results != null) {
+			results.writeGame(record);
+		}
+		Consumer<GameRecord> listener = gameListener;
+		if (listener != null) {
+			listener.accept(record);
+		}
+	}
+	
+	void setGameListener(Consumer<GameRecord> gameListener) {
+		this.gameListener = gameListener;
+	}
+	
+	// Writes a battle that was just played to the results file, its games are already there
+	void writeResults(String player1, String player2, int result, List<GameRecord> gameRecords) {
+		if (results != null) {
+			results.writeSeries(player1, player2, result, gameRecords);
+		}
+	}
+	
+	// Adds the results of a battle's conditions to the tables per condition, if it was a sweep
+	void addSweepResults(String player1, String player2, List<GameRecord> gameRecords) {
+		if ((getSweep() == null) || (gameRecords.size() != 2 * sweep.size())) {
+			return;
+		}
+		for (int i = 0; i < sweep.size(); ++i) {
+			int result = getConditionResult(gameRecords.get(2 * i).getResult(), gameRecords.get(2 * i + 1).getResult());
+			sweepTables.get(sweep.get(i)).add(player1, player2, result);
+		}
+	}
+	
+	// Prints the table of every condition of the sweep and writes it next to crosstableFile
+	private void printSweepResults() {
+		for (Map.Entry<MatchCondition, Crosstable> entry : sweepTables.entrySet()) {
+			out.println("Crosstable " + entry.getKey() + ":");
+			entry.getValue().print(out);
+			String file = crosstableFile.replaceFirst("(\\.csv)?$", "_" + entry.getKey().toFileName() + ".csv");
+			try {
+				entry.getValue().writeCsv(new File(file));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	// Closes the results file and prints the crosstable and writes it to crosstableFile
+	private void finishResults() {
+		if (results != null) {
+			results.close();
+			results = null;
+		}
+		out.println("Crosstable:");
+		crosstable.print(out);
+		try {
+			crosstable.writeCsv(new File(crosstableFile));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		printSweepResults();
+	}
+	
+	// Writes a leaderboard snapshot every snapshotInterval seconds and forces the journal
+	// to the disk every Journal.SYNC_INTERVAL milliseconds on a daemon thread, null if
+	// there is neither
+	private ScheduledExecutorService startSnapshots(TournamentScheme scheme) {
+		boolean leaderboard = snapshotInterval > 0 && scheme instanceof GroupScheme;
+		if (!leaderboard && journal == null) {
+			return null;
+		}
+		ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "snapshots");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (leaderboard) {
+			final GroupScheme groupScheme = (GroupScheme) scheme;
+			snapshots.scheduleWithFixedDelay(() -> writeSnapshot(groupScheme), 
+					snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+		}
+		if (journal != null) {
+			final Journal snapshotJournal = journal;
+			snapshots.scheduleWithFixedDelay(() -> syncJournal(snapshotJournal), 
+					Journal.SYNC_INTERVAL, Journal.SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		return snapshots;
+	}
+	
+	private void syncJournal(Journal journal) {
+		try {
+			journal.syncIfDue();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private void writeSnapshot(GroupScheme scheme) {
+		try {
+			scheme.writeSnapshot(new File(snapshotFile));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	// Registers the monitor with JMX and starts its HTTP server, returns the server or null
+	private MonitorServer startMonitor(final TournamentScheme scheme) {
+		monitor.setScheme(scheme);
+		if (scheme instanceof GroupScheme) {
+			monitor.setQueueDepth(((GroupScheme) scheme)::getRemainingMatches);
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(monitor, getMonitorName());
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		if (monitorPort <= 0) {
+			return null;
+		}
+		try {
+			MonitorServer server = new MonitorServer(monitor, monitorPort);
+			out.println("Monitor: http://localhost:" + server.getPort() + "/");
+			return server;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	private void stopMonitor(MonitorServer server) {
+		if (server != null) {
+			server.stop();
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(getMonitorName());
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static ObjectName getMonitorName() throws MalformedObjectNameException {
+		return new ObjectName("Tournament:type=TournamentMonitor");
+	}
+	
+	// Marks the tournament in the journal as over
+	private void finishJournal() {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.finish();
+			journal.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		journal = null;
+		finishedBattles.clear();
+	}
+	
+	void addResult(TournamentScheme scheme, String player1, String player2, int result) {
+		if (crosstable != null) {
+			crosstable.add(player1, player2, result);
+		}
+		switch (result) {
+			case 1:	
+				scheme.addPoints(player1, 3);
+				scheme.addPoints(player2, 0);
+				break;
+			case 2:
+				scheme.addPoints(player1, 0);
+				scheme.addPoints(player2, 3);
+				break;
+			case 0:
+				scheme.addPoints(player1, 1);
+				scheme.addPoints(player2, 1);
+				break;
+		}
+	}
+	
+	// Adds the search statistics of both players of a game to their totals
+	void addSearchStatistics(GameRecord record) {
+		Geometry geometry = new Geometry(record.getBoardRows(), record.getBoardColumns(), record.getWinNumber());
+		addSearchStatistics(record.getPlayer1(), geometry, record.getStatistics1());
+		addSearchStatistics(record.getPlayer2(), geometry, record.getStatistics2());
+	}
+	
+	private void addSearchStatistics(String playerName, Geometry geometry, SearchStatistics statistics) {
+		if (statistics == null) {
+			return;
+		}
+		Map<Geometry, SearchStatistics> perGeometry = searchStatistics.get(playerName);
+		if (perGeometry == null) {
+			perGeometry = new LinkedHashMap<Geometry, SearchStatistics>();
+			searchStatistics.put(playerName, perGeometry);
+		}
+		SearchStatistics total = perGeometry.get(geometry);
+		if (total == null) {
+			total = new SearchStatistics();
+			perGeometry.put(geometry, total);
+		}
+		total.add(statistics);
+	}
+	
+	// Prints the search statistics of every player that reported them, in total and per geometry
+	private void printSearchStatistics() {
+		if (searchStatistics.isEmpty()) {
+			return;
+		}
+		out.println("Search statistics:");
+		for (Map.Entry<String, Map<Geometry, SearchStatistics>> entry : searchStatistics.entrySet()) {
+			SearchStatistics total = new SearchStatistics();
+			for (SearchStatistics statistics : entry.getValue().values()) {
+				total.add(statistics);
+			}
+			out.println(entry.getKey() + " : " + total);
+			for (Map.Entry<Geometry, SearchStatistics> geometry : entry.getValue().entrySet()) {
+				out.println("	" + geometry.getKey() + " : " + geometry.getValue());
+			}
+		}
+	}
+	
+	// Upper bound on how long a whole battle (every game of the series, or every condition
+	// of the sweep, see playSweep) may take, in seconds
+	long getBattleTimeLimit() {
+		List<MatchCondition> conditions = getSweep();
+		if (conditions != null) {
+			return 3L * conditions.size() * battleDurationLimit;
+		}
+		return 2L * battlesLimit * battleDurationLimit;
+	}
+	
 	public void run() throws ClassNotFoundException, NoSuchMethodException, 
 								SecurityException, InstantiationException, 
 								IllegalAccessException, IllegalArgumentException, 
@@ -239,32 +1119,40 @@ public class Tournament {
 			out.println(playerName);
 		}
 		TournamentScheme scheme = new GroupScheme(playerNames);
-		List<String> nextMatch = null;
-		while ((nextMatch = scheme.getNextCompetitors()) != null) {
-			String player1 = nextMatch.get(0);
-			String player2 = nextMatch.get(1);
-			out.print("Current battle: " + player1 + " vs " + player2);
-			PrintStream sysOut = System.out;
-			System.setOut(new PrintStream(new OutputStream() {
-				@Override public void write(int b) throws IOException {}
-			}));
-			int result = doBattle(player1, player2);
-			switch (result) {
-				case 1:	
-					scheme.addPoints(player1, 3);
-					scheme.addPoints(player2, 0);
-					break;
-				case 2:
-					scheme.addPoints(player1, 0);
-					scheme.addPoints(player2, 3);
-					break;
-				case 0:
-					scheme.addPoints(player1, 1);
-					scheme.addPoints(player2, 1);
-					break;
+		crosstable = new Crosstable(playerNames);
+		sweepTables.clear();
+		if (getSweep() != null) {
+			for (MatchCondition condition : sweep) {
+				sweepTables.put(condition, new Crosstable(playerNames));
+			}
+		}
+		resume(scheme, playerNames);
+		openResultCache();
+		openResults();
+		ScheduledExecutorService snapshots = startSnapshots(scheme);
+		MonitorServer monitorServer = startMonitor(scheme);
+		if (workers > 0) {
+			WorkerPool pool = new WorkerPool(this, workers, workerHeap);
+			pool.run(scheme);
+		}
+		else {
+			List<String> nextMatch = null;
+			while ((nextMatch = getNextCompetitors(scheme)) != null) {
+				String player1 = nextMatch.get(0);
+				String player2 = nextMatch.get(1);
+				out.print("Current battle: " + player1 + " vs " + player2);
+				PrintStream sysOut = System.out;
+				System.setOut(new PrintStream(new OutputStream() {
+					@Override public void write(int b) throws IOException {}
+				}));
+				List<GameRecord> gameRecords = new ArrayList<GameRecord>();
+				int result = doBattle(player1, player2, gameRecords);
+				recordResult(scheme, player1, player2, result);
+				writeResults(player1, player2, result, gameRecords);
+				addSweepResults(player1, player2, gameRecords);
+				System.setOut(sysOut);
+				out.println("	| " + Integer.toString(result));
 			}
-			System.setOut(sysOut);
-			out.println("	| " + Integer.toString(result));
 		}
 		
 		for(Map.Entry<String, Integer> entry : scheme.getLeaderboard()){
@@ -274,6 +1162,20 @@ public class Tournament {
 			out.println(formatter.toString());
 			formatter.close();
 		}
+		printSearchStatistics();
+		finishResults();
+		if (snapshots != null) {
+			snapshots.shutdownNow();
+		}
+		if (snapshotInterval > 0) {
+			writeSnapshot((GroupScheme) scheme);
+		}
+		finishJournal();
+		if (resultCache != null) {
+			resultCache.close();
+			resultCache = null;
+		}
+		stopMonitor(monitorServer);
 		
 		PrintStream exceptionsOut = null; 
 		try {
@@ -282,6 +1184,7 @@ public class Tournament {
 			} catch (FileNotFoundException e1) {
 			e1.printStackTrace();
 		}
+		closePlayers();
 		HashMap<String, Integer> statistics = StaticExceptionCounter.getExceptionsStatistics();
 		for(Map.Entry<String, Integer> entry : statistics.entrySet()){
 			StringBuilder sb = new StringBuilder();
@@ -0,0 +1,226 @@
+/**
+ * This collects what a running tournament is doing: the
+ * battles in flight and for how long, games per second,
+ * how many battles are still queued, move time percentiles
+ * of every player, forfeits, losses on time and the
+ * standings. It is read
+ * through JMX (see TournamentMonitorMBean) and by
+ * MonitorServer, while the tournament keeps writing to it
+ * from its battle threads.
+ */
+
+package Tournament;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import Referee.Referee;
+import Utilities.StaticExceptionCounter;
+
+public class TournamentMonitor implements TournamentMonitorMBean, Referee.MoveObserver {
+	private static final int WINDOW = 60; // seconds games per second is averaged over
+
+	private final ConcurrentHashMap<String, Long> inFlight = new ConcurrentHashMap<String, Long>(); // battle -> start
+	private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentHashMap<String, Integer> timeLosses = new ConcurrentHashMap<String, Integer>(); // games lost on time
+	private final ConcurrentHashMap<String, Integer> clockLosses = new ConcurrentHashMap<String, Integer>(); // of those, on a game clock
+	private final AtomicLong gamesPlayed = new AtomicLong();
+	private final long[] gamesPerSecond = new long[WINDOW]; // games finished in each of the last seconds
+	private long currentSecond = 0; // the second the last slot of gamesPerSecond counts
+	private boolean windowStarted = false;
+	private volatile IntSupplier queueDepth = () -> 0;
+	private volatile TournamentScheme scheme = null;
+
+	public void battleStarted(String player1, String player2) {
+		inFlight.put(player1 + " vs " + player2, System.nanoTime());
+	}
+
+	public void battleFinished(String player1, String player2) {
+		inFlight.remove(player1 + " vs " + player2);
+	}
+
+	public void gamesFinished(int games) {
+		gamesPlayed.addAndGet(games);
+		synchronized (gamesPerSecond) {
+			gamesPerSecond[(int) Math.floorMod(advance(), (long) WINDOW)] += games;
+		}
+	}
+
+	@Override
+	public void moveMade(String playerName, long nanoseconds) {
+		LatencyHistogram histogram = latencies.get(playerName);
+		if (histogram == null) {
+			histogram = latencies.computeIfAbsent(playerName, name -> new LatencyHistogram());
+		}
+		histogram.record(nanoseconds);
+	}
+
+	@Override
+	public void timeLost(String playerName, boolean gameClock) {
+		addTimeLosses(playerName, 1, gameClock ? 1 : 0);
+	}
+
+	public void addTimeLosses(String playerName, int losses, int onClock) {
+		timeLosses.merge(playerName, losses, Integer::sum);
+		if (onClock > 0) {
+			clockLosses.merge(playerName, onClock, Integer::sum);
+		}
+	}
+
+	/**
+	 * The losses on time recorded so far, by player, as { losses, on a game
+	 * clock }. Used by workers, like takeLatencies.
+	 */
+	public Map<String, int[]> takeTimeLosses() {
+		Map<String, int[]> taken = new TreeMap<String, int[]>();
+		for (String playerName : timeLosses.keySet()) {
+			Integer losses = timeLosses.remove(playerName);
+			Integer onClock = clockLosses.remove(playerName);
+			if (losses != null) {
+				taken.put(playerName, new int[] { losses, (onClock == null) ? 0 : onClock });
+			}
+		}
+		return taken;
+	}
+
+	public void addLatencies(String playerName, LatencyHistogram histogram) {
+		latencies.computeIfAbsent(playerName, name -> new LatencyHistogram()).add(histogram);
+	}
+
+	/**
+	 * The move times recorded so far, by player. Used by workers, which send
+	 * them to the coordinator after every battle and start over.
+	 */
+	public Map<String, LatencyHistogram> takeLatencies() {
+		Map<String, LatencyHistogram> taken = new TreeMap<String, LatencyHistogram>();
+		for (String playerName : latencies.keySet()) {
+			LatencyHistogram histogram = latencies.remove(playerName);
+			if (histogram != null) {
+				taken.put(playerName, histogram);
+			}
+		}
+		return taken;
+	}
+
+	public void setQueueDepth(IntSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public void setScheme(TournamentScheme scheme) {
+		this.scheme = scheme;
+	}
+
+	@Override
+	public String[] getInFlightMatches() {
+		long now = System.nanoTime();
+		List<String> matches = new ArrayList<String>();
+		for (Map.Entry<String, Long> entry : new TreeMap<String, Long>(inFlight).entrySet()) {
+			matches.add(entry.getKey() + ", " + (now - entry.getValue()) / 1000000000L + " s");
+		}
+		return matches.toArray(new String[0]);
+	}
+
+	@Override
+	public long getLongestMatchSeconds() {
+		long now = System.nanoTime();
+		long longest = 0;
+		for (long start : inFlight.values()) {
+			longest = Math.max(longest, now - start);
+		}
+		return longest / 1000000000L;
+	}
+
+	@Override
+	public long getGamesPlayed() {
+		return gamesPlayed.get();
+	}
+
+	@Override
+	public double getGamesPerSecond() {
+		long total = 0;
+		synchronized (gamesPerSecond) {
+			advance();
+			for (long games : gamesPerSecond) {
+				total += games;
+			}
+		}
+		return (double) total / WINDOW;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queueDepth.getAsInt();
+	}
+
+	@Override
+	public String[] getPlayerLatencies() {
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(latencies).entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+			lines.add(String.format(Locale.US, "%s %d %.3f %.3f %.3f %.3f", entry.getKey(), histogram.getCount(),
+					histogram.getPercentile(50) / 1e6, histogram.getPercentile(90) / 1e6,
+					histogram.getPercentile(99) / 1e6, histogram.getPercentile(100) / 1e6));
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	@Override
+	public String[] getForfeits() {
+		// Losses on a game clock are not counted as exceptions, the ones on a move time limit are
+		Map<String, Integer> forfeits = new TreeMap<String, Integer>(StaticExceptionCounter.getSnapshot());
+		for (Map.Entry<String, Integer> entry : clockLosses.entrySet()) {
+			forfeits.merge(entry.getKey(), entry.getValue(), Integer::sum);
+		}
+		return toLines(forfeits);
+	}
+
+	@Override
+	public String[] getTimeLosses() {
+		return toLines(new TreeMap<String, Integer>(timeLosses));
+	}
+
+	private static String[] toLines(Map<String, Integer> counts) {
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			lines.add(entry.getKey() + " " + entry.getValue());
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	@Override
+	public String[] getStandings() {
+		TournamentScheme current = scheme;
+		if (current == null) {
+			return new String[0];
+		}
+		List<String> lines = new ArrayList<String>();
+		int rank = 0;
+		for (Map.Entry<String, Integer> entry : current.getLeaderboard()) {
+			lines.add(++rank + " " + entry.getKey() + " " + entry.getValue());
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	// Moves the window to the current second, clearing the seconds that passed; call with the lock held
+	private long advance() {
+		long second = System.nanoTime() / 1000000000L;
+		if (!windowStarted || second - currentSecond >= WINDOW) {
+			windowStarted = true;
+			Arrays.fill(gamesPerSecond, 0);
+		}
+		else {
+			for (long s = currentSecond + 1; s <= second; ++s) {
+				gamesPerSecond[(int) Math.floorMod(s, (long) WINDOW)] = 0;
+			}
+		}
+		currentSecond = second;
+		return second;
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * This is the JMX view of a running tournament, see
+ * TournamentMonitor. It is registered as
+ * "Tournament:type=TournamentMonitor" on the platform
+ * MBean server, so jconsole or any JMX client can watch it.
+ */
+
+package Tournament;
+
+public interface TournamentMonitorMBean {
+	// "player1 vs player2, N s" for every battle being played
+	public String[] getInFlightMatches();
+
+	// Seconds the longest running battle has been going, 0 if none is
+	public long getLongestMatchSeconds();
+
+	public long getGamesPlayed();
+
+	// Games finished per second over the last minute
+	public double getGamesPerSecond();
+
+	// Battles waiting to be played
+	public int getQueueDepth();
+
+	// "player moves p50 p90 p99 max" per player, in milliseconds
+	public String[] getPlayerLatencies();
+
+	// "player count" per player that forfeited games by timeouts, exceptions or allocations
+	public String[] getForfeits();
+
+	// "player count" per player that lost games on time, on a move time limit or a game clock
+	public String[] getTimeLosses();
+
+	// "rank player points", best first
+	public String[] getStandings();
+}
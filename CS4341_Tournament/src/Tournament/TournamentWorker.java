@@ -0,0 +1,92 @@
+/**
+ * This is the worker side of the multi-process
+ * tournament. WorkerPool starts it in a separate JVM,
+ * it connects back to the given local port and plays
+ * every battle it is asked for with Tournament.doBattle,
+ * under the sweep matrix given after the port, if any.
+ * See WorkerPool for the protocol.
+ */
+
+package Tournament;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import Utilities.StaticExceptionCounter;
+
+public class TournamentWorker {
+	public static void main(String[] args) {
+		int port = Integer.parseInt(args[0]);
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override public void write(int b) throws IOException {}
+		}));
+
+		Tournament tournament = new Tournament();
+		if (args.length > 1) {
+			tournament.setSweepFile(args[1]);
+		}
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			final PrintWriter out = new PrintWriter(socket.getOutputStream(), false);
+			// Every game goes to the coordinator's results file as soon as it ends
+			tournament.setGameListener(record -> {
+				synchronized (out) {
+					out.println("PLAYED " + record);
+					out.flush();
+				}
+			});
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split(" ");
+				if (fields[0].equals("QUIT")) {
+					break;
+				}
+				if (!fields[0].equals("MATCH") || fields.length != 3) {
+					continue;
+				}
+
+				List<GameRecord> gameRecords = new ArrayList<GameRecord>();
+				int result = 0;
+				try {
+					result = tournament.doBattle(fields[1], fields[2], gameRecords);
+				} catch (ReflectiveOperationException | IllegalArgumentException | SecurityException e) {
+					e.printStackTrace();
+				}
+
+				synchronized (out) {
+					for (GameRecord record : gameRecords) {
+						out.println("GAME " + record);
+					}
+					HashMap<String, Integer> statistics = StaticExceptionCounter.getExceptionsStatistics();
+					for (Map.Entry<String, Integer> entry : statistics.entrySet()) {
+						out.println("EXCEPTION " + entry.getKey() + " " + entry.getValue());
+					}
+					statistics.clear();
+					for (Map.Entry<String, LatencyHistogram> entry : tournament.getMonitor().takeLatencies().entrySet()) {
+						out.println("LATENCY " + entry.getKey() + " " + entry.getValue().encode());
+					}
+					for (Map.Entry<String, int[]> entry : tournament.getMonitor().takeTimeLosses().entrySet()) {
+						out.println("TIMELOSS " + entry.getKey() + " " + entry.getValue()[0] + " " + entry.getValue()[1]);
+					}
+					out.println("RESULT " + result);
+					out.flush();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		tournament.closePlayers();
+		// Battle executors keep non-daemon threads (and possibly runaway player threads) alive
+		System.exit(0);
+	}
+}
@@ -0,0 +1,371 @@
+/**
+ * This is the coordinator side of the multi-process
+ * tournament. It forks a number of worker JVMs (see
+ * TournamentWorker), hands them battles over local
+ * sockets and collects the results and game records.
+ *
+ * A worker that crashes, hangs or closes its connection
+ * is killed and restarted, and the battle it was playing
+ * is rescheduled. A battle that fails too many times
+ * counts as a tie, same as a failed battle in doBattle.
+ * If every slot is gone (e.g. none could open its server
+ * socket), the remaining battles are played in-process.
+ *
+ * Protocol (one line per message):
+ *   coordinator -> worker: "MATCH player1 player2", "QUIT"
+ *   worker -> coordinator: "PLAYED record" as soon as a game ends,
+ *                          then after the battle "GAME record" for its
+ *                          games in order, "EXCEPTION player count",
+ *                          "LATENCY player histogram",
+ *                          "TIMELOSS player losses onClock", "RESULT result"
+ */
+
+package Tournament;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Utilities.StaticExceptionCounter;
+
+public class WorkerPool {
+	private int maxAttempts = 3; // how many times a battle is tried before it counts as a tie
+	private int connectTimeout = 60; // seconds a fresh worker has to connect back
+	private final Tournament tournament;
+	private final int numberOfWorkers;
+	private final String workerHeap;
+	private final LinkedBlockingDeque<Match> pending = new LinkedBlockingDeque<Match>();
+	private final BlockingQueue<Match> finished = new LinkedBlockingQueue<Match>();
+	private final AtomicInteger unfinished = new AtomicInteger();
+
+	// One battle and everything the worker sent back about it
+	static class Match {
+		final String player1;
+		final String player2;
+		int attempts = 0;
+		int result = 0;
+		boolean inProcess = false; // played by doBattle here, which already counted its games
+		List<GameRecord> gameRecords = new ArrayList<GameRecord>();
+		Map<String, Integer> exceptions = new HashMap<String, Integer>();
+		Map<String, LatencyHistogram> latencies = new HashMap<String, LatencyHistogram>();
+		Map<String, int[]> timeLosses = new HashMap<String, int[]>();
+
+		Match(String player1, String player2) {
+			this.player1 = player1;
+			this.player2 = player2;
+		}
+	}
+
+	public WorkerPool(Tournament tournament, int numberOfWorkers, String workerHeap) {
+		this.tournament = tournament;
+		this.numberOfWorkers = numberOfWorkers;
+		this.workerHeap = workerHeap;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void run(TournamentScheme scheme) {
+		List<String> nextMatch = null;
+		while ((nextMatch = tournament.getNextCompetitors(scheme)) != null) {
+			pending.add(new Match(nextMatch.get(0), nextMatch.get(1)));
+		}
+		int numberOfMatches = pending.size();
+		unfinished.set(numberOfMatches);
+		TournamentMonitor monitor = tournament.getMonitor();
+		monitor.setQueueDepth(pending::size);
+
+		List<Thread> slots = new ArrayList<Thread>();
+		for (int i = 0; i < numberOfWorkers; ++i) {
+			Thread slot = new Thread(new WorkerSlot(i), "tournament-worker-" + i);
+			slot.setDaemon(true);
+			slot.start();
+			slots.add(slot);
+		}
+
+		PrintStream recordsOut = null;
+		try {
+			recordsOut = new PrintStream(
+				     new FileOutputStream("log/game_records.txt", true));
+		} catch (FileNotFoundException e1) {
+			e1.printStackTrace();
+		}
+
+		PrintStream out = tournament.getOut();
+		int received = 0;
+		while (received < numberOfMatches) {
+			Match match;
+			try {
+				match = finished.poll(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				break;
+			}
+			if (match == null) {
+				if (isAnyAlive(slots)) {
+					continue;
+				}
+				match = pending.poll();
+				if (match == null) {
+					if (finished.isEmpty()) {
+						System.err.println("Every worker slot is gone, " + (numberOfMatches - received) + " battles were lost");
+						break;
+					}
+					continue;
+				}
+				playInProcess(match);
+			}
+			++received;
+			tournament.recordResult(scheme, match.player1, match.player2, match.result);
+			tournament.writeResults(match.player1, match.player2, match.result, match.gameRecords);
+			tournament.addSweepResults(match.player1, match.player2, match.gameRecords);
+			for (Map.Entry<String, Integer> entry : match.exceptions.entrySet()) {
+				for (int j = 0; j < entry.getValue(); ++j) {
+					StaticExceptionCounter.addException(entry.getKey());
+				}
+			}
+			if (!match.inProcess) {
+				for (GameRecord record : match.gameRecords) {
+					tournament.addSearchStatistics(record);
+				}
+				monitor.gamesFinished(match.gameRecords.size());
+			}
+			for (Map.Entry<String, LatencyHistogram> entry : match.latencies.entrySet()) {
+				monitor.addLatencies(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<String, int[]> entry : match.timeLosses.entrySet()) {
+				monitor.addTimeLosses(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+			}
+			if (recordsOut != null) {
+				for (GameRecord record : match.gameRecords) {
+					recordsOut.println(record);
+				}
+				recordsOut.flush();
+			}
+			out.println("Current battle: " + match.player1 + " vs " + match.player2
+					+ "	| " + Integer.toString(match.result));
+		}
+
+		for (Thread slot : slots) {
+			try {
+				slot.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		if (recordsOut != null) {
+			recordsOut.close();
+		}
+	}
+
+	private static boolean isAnyAlive(List<Thread> slots) {
+		for (Thread slot : slots) {
+			if (slot.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Plays a battle no worker is left for with doBattle, which writes and counts its games itself
+	private void playInProcess(Match match) {
+		System.err.println("No worker left, playing " + match.player1 + " vs " + match.player2 + " in-process");
+		match.inProcess = true;
+		match.gameRecords.clear();
+		match.exceptions.clear();
+		match.latencies.clear();
+		match.timeLosses.clear();
+		try {
+			match.result = tournament.doBattle(match.player1, match.player2, match.gameRecords);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			e.printStackTrace();
+			match.result = 0;
+		}
+	}
+
+	// Hands battles to one worker JVM at a time, restarting it whenever it fails
+	private class WorkerSlot implements Runnable {
+		private final int id;
+		private ServerSocket serverSocket;
+		private Process process;
+		private Socket socket;
+		private BufferedReader in;
+		private PrintWriter out;
+
+		WorkerSlot(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public void run() {
+			try {
+				serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+				serverSocket.setSoTimeout(connectTimeout * 1000);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+
+			while (unfinished.get() > 0) {
+				Match match;
+				try {
+					match = pending.poll(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (match == null) {
+					continue; // a battle may still be rescheduled by another slot
+				}
+
+				match.attempts += 1;
+				match.gameRecords.clear();
+				match.exceptions.clear();
+				match.latencies.clear();
+				match.timeLosses.clear();
+				try {
+					if (process == null) {
+						startWorker();
+					}
+					play(match);
+					unfinished.decrementAndGet();
+					finished.add(match);
+				} catch (IOException | RuntimeException e) {
+					System.err.println("Worker " + id + " failed on " + match.player1 + " vs "
+							+ match.player2 + " (attempt " + match.attempts + "): " + e);
+					stopWorker();
+					if (match.attempts < maxAttempts) {
+						pending.addFirst(match);
+					}
+					else {
+						match.result = 0;
+						match.gameRecords.clear();
+						unfinished.decrementAndGet();
+						finished.add(match);
+					}
+				}
+			}
+
+			if (out != null) {
+				out.println("QUIT");
+				out.flush();
+			}
+			stopWorker();
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		private void startWorker() throws IOException {
+			List<String> command = new ArrayList<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			if (workerHeap != null) {
+				command.add("-Xmx" + workerHeap);
+			}
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(TournamentWorker.class.getName());
+			command.add(Integer.toString(serverSocket.getLocalPort()));
+			if (tournament.getSweepFile() != null) {
+				command.add(tournament.getSweepFile());
+			}
+
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			process = builder.start();
+
+			socket = serverSocket.accept();
+			socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, tournament.getBattleTimeLimit() * 1000L));
+			in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			out = new PrintWriter(socket.getOutputStream(), true);
+		}
+
+		private void play(Match match) throws IOException {
+			TournamentMonitor monitor = tournament.getMonitor();
+			monitor.battleStarted(match.player1, match.player2);
+			try {
+				readResults(match);
+			} finally {
+				monitor.battleFinished(match.player1, match.player2);
+			}
+		}
+
+		private void readResults(Match match) throws IOException {
+			out.println("MATCH " + match.player1 + " " + match.player2);
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith("PLAYED ")) {
+					tournament.writeGame(GameRecord.parse(line.substring(7)));
+				}
+				else if (line.startsWith("GAME ")) {
+					match.gameRecords.add(GameRecord.parse(line.substring(5)));
+				}
+				else if (line.startsWith("EXCEPTION ")) {
+					String[] fields = line.split(" ");
+					match.exceptions.put(fields[1], Integer.parseInt(fields[2]));
+				}
+				else if (line.startsWith("LATENCY ")) {
+					String[] fields = line.split(" ");
+					match.latencies.put(fields[1], LatencyHistogram.parse(fields[2]));
+				}
+				else if (line.startsWith("TIMELOSS ")) {
+					String[] fields = line.split(" ");
+					match.timeLosses.put(fields[1], new int[] { Integer.parseInt(fields[2]), Integer.parseInt(fields[3]) });
+				}
+				else if (line.startsWith("RESULT ")) {
+					match.result = Integer.parseInt(line.substring(7).trim());
+					return;
+				}
+			}
+			throw new IOException("worker closed the connection");
+		}
+
+		private void stopWorker() {
+			try {
+				if (socket != null) {
+					socket.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (process != null) {
+				process.destroy();
+				try {
+					if (!process.waitFor(5, TimeUnit.SECONDS)) {
+						process.destroyForcibly();
+					}
+				} catch (InterruptedException e) {
+					process.destroyForcibly();
+				}
+			}
+			process = null;
+			socket = null;
+			in = null;
+			out = null;
+		}
+	}
+}
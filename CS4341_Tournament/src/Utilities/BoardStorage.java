@@ -0,0 +1,29 @@
+package Utilities;
+/**
+ * This is how a StateTree stores its cells. Rows are counted from
+ * the bottom and cells hold 0 for empty, 1 for player1 and 2 for player2.
+ * StateTree keeps track of column heights itself, so a storage never
+ * has to look for the top of a column.
+ * 
+ * DenseStorage is the plain int matrix every board used to have,
+ * SparseStorage only stores the pieces that were actually played.
+ */
+
+public interface BoardStorage
+{
+	public int get(int row, int column);
+	
+	public void set(int row, int column, int value);
+	
+	// Removes the bottom piece of a column holding height pieces, the pieces above fall down one row
+	public void pop(int column, int height);
+	
+	// A new empty storage of the same kind and size
+	public BoardStorage newEmpty();
+	
+	// Copies a storage of the same kind and size
+	public void copyFrom(BoardStorage other);
+	
+	// The board as a matrix, changes to it only reach the board for DenseStorage
+	public int[][] getMatrix();
+}
@@ -0,0 +1,51 @@
+package Utilities;
+/**
+ * This is a read-only view of a board. The referee hands it to players
+ * that implement BoardViewPlayer instead of a StateTree. It reads the
+ * referee's own board directly, so it costs nothing to create, but you
+ * can't change the game through it. Copy what you need into your own
+ * StateTree if you want to search.
+ * 
+ * Rows are counted from the bottom (row 0) and columns from the left
+ * (column 0). Cells hold 0 for empty, 1 for player1 and 2 for player2.
+ * 
+ * Boards with (rows + 1) * columns <= 64 also have bitboards: bit
+ * column * (rows + 1) + row of getBitboard(p) is set if player p has a
+ * piece in that cell, the extra bit on top of every column is always 0.
+ * Such boards also have a position key made from the bitboards, whose
+ * turn it is and the pop flags, which you can use for transposition tables.
+ */
+
+public interface BoardView
+{
+	public int getRows();
+	
+	public int getColumns();
+	
+	public int getWinNumber();
+	
+	// Whose turn it is (1 or 2)
+	public int getTurn();
+	
+	// The piece in the given cell (0 = empty, 1 = player1, 2 = player2)
+	public int getCell(int row, int column);
+	
+	// Number of pieces in the given column
+	public int getHeight(int column);
+	
+	// Number of pieces on the whole board
+	public int getPieceCount();
+	
+	// True if the given player (1 or 2) has already used its pop move
+	public boolean hasPopped(int player);
+	
+	public boolean hasBitboards();
+	
+	// Bitboard of the given player (1 or 2), only valid if hasBitboards() is true
+	public long getBitboard(int player);
+	
+	public boolean hasPositionKey();
+	
+	// Only valid if hasPositionKey() is true
+	public long getPositionKey();
+}
@@ -0,0 +1,53 @@
+package Utilities;
+/**
+ * This stores a board as a plain rows x columns int matrix.
+ * getMatrix() returns the matrix itself.
+ */
+
+public class DenseStorage implements BoardStorage
+{
+	private final int rows, columns;
+	private final int[][] matrix;
+	
+	public DenseStorage(int r, int c)
+	{
+		rows = r;
+		columns = c;
+		matrix = new int[rows][columns];
+	}
+	
+	public int get(int row, int column)
+	{
+		return matrix[row][column];
+	}
+	
+	public void set(int row, int column, int value)
+	{
+		matrix[row][column] = value;
+	}
+	
+	public void pop(int column, int height)
+	{
+		for(int i=0; i<height-1; i++)
+			matrix[i][column] = matrix[i+1][column];
+		if(height > 0)
+			matrix[height-1][column] = 0;
+	}
+	
+	public BoardStorage newEmpty()
+	{
+		return new DenseStorage(rows, columns);
+	}
+	
+	public void copyFrom(BoardStorage other)
+	{
+		int[][] otherMatrix = ((DenseStorage) other).matrix;
+		for(int i=0; i<rows; i++)
+			System.arraycopy(otherMatrix[i], 0, matrix[i], 0, columns);
+	}
+	
+	public int[][] getMatrix()
+	{
+		return matrix;
+	}
+}
@@ -0,0 +1,48 @@
+package Utilities;
+/**
+ * This is the geometry of a board: how many rows and
+ * columns it has and how many pieces in a row you
+ * need to win. Players get it in Player.init.
+ */
+
+public class Geometry
+{
+	public final int rows, columns, winNumber;
+	
+	public Geometry(int r, int c, int w)
+	{
+		rows = r;
+		columns = c;
+		winNumber = w;
+	}
+	
+	// Reads a geometry written by toString, e.g. "6x7/4"
+	public static Geometry parse(String s)
+	{
+		String[] parts = s.trim().split("[x/]");
+		if(parts.length != 3)
+			throw new IllegalArgumentException("Malformed geometry: " + s);
+		return new Geometry(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof Geometry))
+			return false;
+		Geometry g = (Geometry) o;
+		return rows == g.rows && columns == g.columns && winNumber == g.winNumber;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return (rows * 31 + columns) * 31 + winNumber;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return rows + "x" + columns + "/" + winNumber;
+	}
+}
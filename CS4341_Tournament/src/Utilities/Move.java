@@ -6,6 +6,11 @@ package Utilities;
  * pop = false means you want to place a piece down the column specified
  * column index starts at 0, which corresponds to the leftmost column
  * 
+ * Search code can also use moves encoded as ints (column * 2, plus 1 for
+ * a pop) with StateTree.generateMoves and makeMove(int), and turn them back
+ * into Move objects with Move.of, which hands out shared objects instead
+ * of allocating new ones.
+ * 
  * @author Ethan Prihar
  *
  */
@@ -14,6 +19,7 @@ public class Move
 {
 	boolean pop;
 	int column;
+	private static volatile Move[] flyweights = new Move[0]; // flyweights[code] is the Move for that int move
 
 	public Move(boolean p, int c)
 	{
@@ -28,4 +34,46 @@ public class Move
 	public int getColumn() {
 		return column;
 	}
+	
+	public int toInt() {
+		return encode(pop, column);
+	}
+	
+	public static int encode(boolean pop, int column) {
+		return (column << 1) | (pop ? 1 : 0);
+	}
+	
+	public static int column(int move) {
+		return move >> 1;
+	}
+	
+	public static boolean isPop(int move) {
+		return (move & 1) != 0;
+	}
+	
+	// The shared Move for an int move, don't change it
+	public static Move of(int move) {
+		Move[] table = flyweights;
+		if (move >= 0 && move < table.length)
+			return table[move];
+		if (move < 0)
+			return new Move(isPop(move), column(move));
+		return grow(move)[move];
+	}
+	
+	public static Move of(boolean pop, int column) {
+		return of(encode(pop, column));
+	}
+	
+	private static synchronized Move[] grow(int move) {
+		Move[] table = flyweights;
+		if (move < table.length)
+			return table;
+		Move[] grown = new Move[Math.max(move + 1, table.length * 2)];
+		System.arraycopy(table, 0, grown, 0, table.length);
+		for (int i = table.length; i < grown.length; i++)
+			grown[i] = new Move(isPop(i), column(i));
+		flyweights = grown;
+		return grown;
+	}
 }
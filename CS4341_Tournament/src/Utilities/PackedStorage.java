@@ -0,0 +1,138 @@
+package Utilities;
+/**
+ * This stores a board with 2 bits per cell, which is 16 times smaller
+ * than a plain int matrix and works for any number of rows and columns.
+ * Every column is a run of longs holding 32 cells each, the bottom row
+ * in the lowest bits. Popping a column is a 2-bit shift of its longs.
+ *
+ * countConnections() counts n-in-a-rows the same way Referee.checkConnect
+ * does, but 32 rows at a time using the bits of whole longs.
+ *
+ * getMatrix() has to build a whole matrix, so avoid it in search
+ * and read cells with StateTree.getCell or a BoardView instead.
+ */
+
+public class PackedStorage implements BoardStorage
+{
+	private static final int CELLS_PER_WORD = 32;
+	private static final long LOW_BITS = 0x5555555555555555L; // the low bit of every cell
+
+	private final int rows, columns;
+	private final int wordsPerColumn;
+	private final long[] words; // column j uses words[j*wordsPerColumn ... (j+1)*wordsPerColumn-1]
+	private long[] scratch; // per-player masks for countConnections, created on first use
+
+	public PackedStorage(int r, int c)
+	{
+		rows = r;
+		columns = c;
+		wordsPerColumn = (rows + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+		words = new long[columns * wordsPerColumn];
+	}
+
+	public int get(int row, int column)
+	{
+		long word = words[column * wordsPerColumn + row / CELLS_PER_WORD];
+		return (int) (word >>> ((row % CELLS_PER_WORD) * 2)) & 3;
+	}
+
+	public void set(int row, int column, int value)
+	{
+		int index = column * wordsPerColumn + row / CELLS_PER_WORD;
+		int shift = (row % CELLS_PER_WORD) * 2;
+		words[index] = (words[index] & ~(3L << shift)) | ((long) value << shift);
+	}
+
+	public void pop(int column, int height)
+	{
+		int first = column * wordsPerColumn;
+		int last = first + (height - 1) / CELLS_PER_WORD; // the word holding the top piece
+		for(int k=first; k<last; k++)
+			words[k] = (words[k] >>> 2) | (words[k+1] << 62);
+		if(height > 0)
+			words[last] >>>= 2;
+	}
+
+	public BoardStorage newEmpty()
+	{
+		return new PackedStorage(rows, columns);
+	}
+
+	public void copyFrom(BoardStorage other)
+	{
+		System.arraycopy(((PackedStorage) other).words, 0, words, 0, words.length);
+	}
+
+	public int[][] getMatrix()
+	{
+		int[][] matrix = new int[rows][columns];
+		for(int i=0; i<rows; i++)
+			for(int j=0; j<columns; j++)
+				matrix[i][j] = get(i, j);
+		return matrix;
+	}
+
+	// Number of n-in-a-rows of player1 minus those of player2, same as Referee.checkConnect
+	public int countConnections(int winNumber)
+	{
+		return countLines(1, winNumber) - countLines(2, winNumber);
+	}
+
+	// Counts every cell that starts winNumber pieces of the player in a row
+	// going right, up, up-right and down-right.
+	public int countLines(int player, int winNumber)
+	{
+		if(scratch == null)
+			scratch = new long[words.length];
+		long[] masks = scratch;
+		// Low bit of a cell in masks is set if the cell holds the player's piece
+		for(int k=0; k<words.length; k++)
+		{
+			long low = words[k] & LOW_BITS;
+			long high = (words[k] >>> 1) & LOW_BITS;
+			masks[k] = (player == 1) ? (low & ~high) : (high & ~low);
+		}
+
+		int count = 0;
+		for(int j=0; j<columns; j++)
+		{
+			boolean fitsRight = j + winNumber <= columns;
+			for(int k=0; k<wordsPerColumn; k++)
+			{
+				long start = masks[j * wordsPerColumn + k];
+				if(start == 0)
+					continue;
+				long up = start, right = start, upRight = start, downRight = start;
+				for(int x=1; x<winNumber; x++)
+				{
+					up &= shifted(masks, j, k, x);
+					if(fitsRight)
+					{
+						right &= masks[(j + x) * wordsPerColumn + k];
+						upRight &= shifted(masks, j + x, k, x);
+						downRight &= shifted(masks, j + x, k, -x);
+					}
+				}
+				count += Long.bitCount(up);
+				if(fitsRight)
+					count += Long.bitCount(right) + Long.bitCount(upRight) + Long.bitCount(downRight);
+			}
+		}
+		return count;
+	}
+
+	// Word k of a column's mask moved down by rowShift rows (up if negative),
+	// so that bit r tells about row 32k + r + rowShift
+	private long shifted(long[] masks, int column, int k, int rowShift)
+	{
+		int base = column * wordsPerColumn;
+		int source = CELLS_PER_WORD * k + rowShift; // row that ends up at bit 0
+		int word = Math.floorDiv(source, CELLS_PER_WORD);
+		int bits = Math.floorMod(source, CELLS_PER_WORD) * 2;
+		long low = (word >= 0 && word < wordsPerColumn) ? masks[base + word] : 0;
+		if(bits == 0)
+			return low;
+		long high = (word + 1 >= 0 && word + 1 < wordsPerColumn) ? masks[base + word + 1] : 0;
+		return (low >>> bits) | (high << (64 - bits));
+	}
+}
@@ -0,0 +1,150 @@
+package Utilities;
+/**
+ * This is the heuristic of MinimaxPlayer_crmyers with its weights taken
+ * out, so they can be tuned (see Tournament.RunTuner) instead of picked
+ * by hand. It counts the runs of pieces each player has in rows and
+ * columns (diagonals and the run at the end of a line are not counted,
+ * same as the original) and scores a board with
+ *
+ *   sum over length = 2 .. winNumber of
+ *       weight[length] * ((mine[length] + 2)^2 - (theirs[length] + 2)^2)
+ *
+ * where mine[length] is how many runs of that length the player has.
+ * The default weights, (length + 2)^3, give the original heuristic.
+ *
+ * Weights files are text, one "length weight" pair per line, lines
+ * starting with # are comments. Lengths that are not listed keep their
+ * default weight.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+public class PathHeuristic
+{
+	public static final int MAX_LENGTH = 64; // longest run that has a weight of its own
+
+	private final double[] weights = new double[MAX_LENGTH + 1];
+
+	public PathHeuristic()
+	{
+		for(int length=0; length<=MAX_LENGTH; length++)
+			weights[length] = Math.pow(length + 2, 3);
+	}
+
+	public double getWeight(int length)
+	{
+		return weights[Math.min(length, MAX_LENGTH)];
+	}
+
+	public void setWeight(int length, double weight)
+	{
+		weights[length] = weight;
+	}
+
+	// Score of the board for the given player, counts needs room for countPaths
+	public float evaluate(StateTree state, int player, int[][] counts)
+	{
+		countPaths(state, counts);
+		float score = 0;
+		for(int length=2; length<=state.winNumber; length++)
+			score += getWeight(length) * feature(counts, player, length);
+		return score;
+	}
+
+	// What the weight of the given length is multiplied with in evaluate
+	public static double feature(int[][] counts, int player, int length)
+	{
+		double mine = counts[player - 1][length] + 2;
+		double theirs = counts[2 - player][length] + 2;
+		return mine * mine - theirs * theirs;
+	}
+
+	// Counts the runs of each player in rows and columns into counts[player - 1][length].
+	// counts needs 2 x (max(rows, columns) + 1) entries.
+	public static void countPaths(StateTree state, int[][] counts)
+	{
+		for(int[] playerCounts : counts)
+			Arrays.fill(playerCounts, 0);
+		for(int x=0; x<state.rows; x++)
+		{
+			int currentPlayer = state.getCell(x, 0);
+			int count = 0;
+			for(int y=0; y<state.columns; y++)
+			{
+				int cell = state.getCell(x, y);
+				if(cell == currentPlayer)
+					count++;
+				else
+				{
+					if(currentPlayer != 0)
+						counts[currentPlayer - 1][count]++;
+					currentPlayer = cell;
+					count = 1;
+				}
+			}
+		}
+		for(int y=0; y<state.columns; y++)
+		{
+			int currentPlayer = state.getCell(0, y);
+			int count = 0;
+			for(int x=0; x<state.rows; x++)
+			{
+				int cell = state.getCell(x, y);
+				if(cell == currentPlayer)
+					count++;
+				else
+				{
+					if(currentPlayer != 0)
+						counts[currentPlayer - 1][count]++;
+					currentPlayer = cell;
+					count = 1;
+				}
+			}
+		}
+	}
+
+	// Reads a weights file, lengths missing from it keep the default weight
+	public static PathHeuristic load(File file) throws IOException
+	{
+		PathHeuristic heuristic = new PathHeuristic();
+		try(BufferedReader reader = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] fields = line.split("\\s+");
+				int length = Integer.parseInt(fields[0]);
+				if(fields.length != 2 || length < 0 || length > MAX_LENGTH)
+					throw new IOException("Malformed weight in " + file + ": " + line);
+				heuristic.setWeight(length, Double.parseDouble(fields[1]));
+			}
+		}
+		catch(NumberFormatException e)
+		{
+			throw new IOException("Malformed weights file " + file, e);
+		}
+		return heuristic;
+	}
+
+	// Writes the weights of the given lengths, with a comment line on top
+	public void save(File file, int fromLength, int toLength, String comment) throws IOException
+	{
+		File directory = file.getAbsoluteFile().getParentFile();
+		if(directory != null)
+			directory.mkdirs();
+		try(PrintWriter writer = new PrintWriter(file))
+		{
+			writer.println("# " + comment);
+			for(int length=fromLength; length<=toLength; length++)
+				writer.println(length + " " + weights[length]);
+		}
+	}
+}
@@ -0,0 +1,555 @@
+/**
+ * This is the registry of all players taking part
+ * in the tournament. It finds player classes in the
+ * players package of every class path directory or
+ * jar and of any extra jars (one jar per entrant is
+ * fine), and creates player instances for battles.
+ *
+ * Sources are scanned in parallel. Classes from extra
+ * jars are loaded in a class loader of their own, so
+ * players can't clash with each other's helper classes.
+ * Players from the class path all share the application
+ * class loader, on purpose: the players package there
+ * holds the player API and the helpers those players
+ * share (see the fingerprints below), which must not be
+ * loaded twice.
+ * Which files contain which players is remembered in an
+ * index file keyed by file modification time and size,
+ * so unchanged files are not opened or loaded again on
+ * the next start. Every player gets a cached constructor
+ * handle, so creating a player costs no reflection.
+ *
+ * A player's fingerprint is a hash of its bytecode, so a
+ * tournament can tell whether a player changed since its
+ * last run (see Tournament.ResultCache). A player from a
+ * jar is fingerprinted by the whole jar. A player from a
+ * class path directory is fingerprinted by its own class
+ * files (with nested classes) and every class file of the
+ * players package that is not a player itself, as those
+ * are the helpers players share. Classes outside the
+ * players package are not part of it, they are hashed on
+ * their own by getEngineFingerprint (the Referee and
+ * Utilities packages). A player that reads data files
+ * (weights, opening books) lists them, relative to the
+ * working directory, in a "public static final String[]
+ * DATA_FILES" field, and their contents are added to its
+ * fingerprint.
+ */
+
+
+package Utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import Players.Player;
+
+public class PlayerRegistry {
+
+    private static final char PKG_SEPARATOR = '.';
+
+    private static final char DIR_SEPARATOR = '/';
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+
+    private static final String JAR_FILE_SUFFIX = ".jar";
+
+    private static final String INDEX_SEPARATOR = "\t";
+
+    private static final String DATA_FILES_FIELD = "DATA_FILES";
+
+    // Packages of the engine, the non-player classes a game's result depends on
+    private static final String[] ENGINE_PACKAGES = { "Referee", "Utilities" };
+
+    private static final MethodType FACTORY_TYPE =
+            MethodType.methodType(Player.class, String.class, Integer.TYPE, Integer.TYPE);
+
+    private final String playersPackage;
+
+    private final File indexFile;
+
+    // Scanned files in the order they were added, each with the loader its classes come from
+    private final Map<File, ClassLoader> sources = Collections.synchronizedMap(new LinkedHashMap<File, ClassLoader>());
+
+    // Index entries read from indexFile and found by the last scan, keyed by file path
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<String, IndexEntry>();
+
+    // Players by name (simple class name)
+    private final Map<String, PlayerEntry> players = new ConcurrentHashMap<String, PlayerEntry>();
+
+    private volatile String engineFingerprint;
+
+    private static class IndexEntry {
+        final long modified;
+        final long length;
+        final List<String> classNames; // player classes found in the file
+
+        IndexEntry(long modified, long length, List<String> classNames) {
+            this.modified = modified;
+            this.length = length;
+            this.classNames = classNames;
+        }
+    }
+
+    private static class PlayerEntry {
+        final String className;
+        final File source;
+        final ClassLoader loader;
+        volatile MethodHandle factory;
+        volatile String fingerprint;
+
+        PlayerEntry(String className, File source, ClassLoader loader) {
+            this.className = className;
+            this.source = source;
+            this.loader = loader;
+        }
+    }
+
+    public PlayerRegistry(String playersPackage, File indexFile) {
+        this.playersPackage = playersPackage;
+        this.indexFile = indexFile;
+    }
+
+    // Adds every directory and jar of the class path, their classes are loaded by the application class loader
+    public void addClassPath() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            File file = new File(path);
+            if (file.exists()) {
+                sources.put(file, loader);
+            }
+        }
+    }
+
+    // Adds every jar in the given directory, each jar gets its own class loader
+    public void addJarDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(JAR_FILE_SUFFIX)) {
+                addJar(file);
+            }
+        }
+    }
+
+    public void addJar(File jar) {
+        try {
+            ClassLoader parent = Player.class.getClassLoader();
+            sources.put(jar, new URLClassLoader(new URL[] { jar.toURI().toURL() }, parent));
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Bad player jar " + jar, e);
+        }
+    }
+
+    // Finds all players in the added sources
+    public void scan() {
+        readIndex();
+        List<File> units = new ArrayList<File>();
+        Map<File, ClassLoader> loaders = new HashMap<File, ClassLoader>();
+        synchronized (sources) {
+            for (Map.Entry<File, ClassLoader> source : sources.entrySet()) {
+                File file = source.getKey();
+                if (file.isDirectory()) {
+                    // Every class file of the players package is scanned on its own
+                    File packageDir = new File(file, playersPackage.replace(PKG_SEPARATOR, File.separatorChar));
+                    for (File classFile : listClassFiles(packageDir)) {
+                        units.add(classFile);
+                        loaders.put(classFile, source.getValue());
+                    }
+                } else {
+                    units.add(file);
+                    loaders.put(file, source.getValue());
+                }
+            }
+        }
+
+        ExecutorService service = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+        for (final File unit : units) {
+            final ClassLoader loader = loaders.get(unit);
+            futures.add(service.submit(() -> scanUnit(unit, loader)));
+        }
+
+        Map<String, IndexEntry> found = new HashMap<String, IndexEntry>();
+        for (int i = 0; i < units.size(); ++i) {
+            File unit = units.get(i);
+            List<String> classNames;
+            try {
+                classNames = futures.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                continue;
+            }
+            found.put(unit.getPath(), new IndexEntry(unit.lastModified(), unit.length(), classNames));
+            for (String className : classNames) {
+                String name = className.substring(className.lastIndexOf(PKG_SEPARATOR) + 1);
+                PlayerEntry existing = players.putIfAbsent(name, new PlayerEntry(className, unit, loaders.get(unit)));
+                if (existing != null && !existing.source.equals(unit)) {
+                    System.err.println("Player " + name + " from " + unit + " is already registered from " + existing.source);
+                }
+            }
+        }
+        service.shutdown();
+
+        index.clear();
+        index.putAll(found);
+        writeIndex();
+    }
+
+    // Names of all players found, sorted
+    public List<String> getPlayerNames() {
+        List<String> names = new ArrayList<String>(players.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    // The directory, class file or jar the player was found in
+    public File getSource(String name) {
+        PlayerEntry entry = players.get(name);
+        return entry == null ? null : entry.source;
+    }
+
+    // Hex SHA-256 of the player's bytecode, see the top of this class
+    public String getFingerprint(String name) throws ClassNotFoundException, IOException {
+        PlayerEntry entry = players.get(name);
+        if (entry == null) {
+            throw new ClassNotFoundException("Unknown player " + name);
+        }
+        String fingerprint = entry.fingerprint;
+        if (fingerprint == null) {
+            fingerprint = computeFingerprint(entry);
+            entry.fingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    // Hash of the class files of the engine packages, from directories or jars alike
+    public String getEngineFingerprint() throws IOException {
+        String fingerprint = engineFingerprint;
+        if (fingerprint != null) {
+            return fingerprint;
+        }
+        MessageDigest digest = newDigest();
+        for (String enginePackage : ENGINE_PACKAGES) {
+            URL url = PlayerRegistry.class.getClassLoader().getResource(enginePackage);
+            if (url == null) {
+                continue;
+            }
+            if (url.getProtocol().equals("file")) {
+                File packageDir;
+                try {
+                    packageDir = new File(url.toURI());
+                } catch (URISyntaxException e) {
+                    throw new IOException("Bad engine package " + url, e);
+                }
+                List<File> classFiles = listClassFiles(packageDir);
+                Collections.sort(classFiles);
+                for (File classFile : classFiles) {
+                    digest.update((enginePackage + classFile.getPath().substring(packageDir.getPath().length()))
+                            .getBytes("UTF-8"));
+                    digest.update(Files.readAllBytes(classFile.toPath()));
+                }
+            } else if (url.getProtocol().equals("jar")) {
+                JarURLConnection connection = (JarURLConnection) url.openConnection();
+                connection.setUseCaches(false);
+                try (JarFile jar = connection.getJarFile()) {
+                    List<String> entryNames = new ArrayList<String>();
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        String entryName = entries.nextElement().getName();
+                        if (entryName.startsWith(enginePackage + DIR_SEPARATOR) && entryName.endsWith(CLASS_FILE_SUFFIX)) {
+                            entryNames.add(entryName);
+                        }
+                    }
+                    Collections.sort(entryNames);
+                    for (String entryName : entryNames) {
+                        digest.update(entryName.getBytes("UTF-8"));
+                        try (InputStream in = jar.getInputStream(jar.getJarEntry(entryName))) {
+                            byte[] buffer = new byte[8192];
+                            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                                digest.update(buffer, 0, n);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        fingerprint = toHex(digest.digest());
+        engineFingerprint = fingerprint;
+        return fingerprint;
+    }
+
+    public Class<?> getPlayerClass(String name) throws ClassNotFoundException {
+        PlayerEntry entry = players.get(name);
+        if (entry == null) {
+            throw new ClassNotFoundException("Unknown player " + name);
+        }
+        return Class.forName(entry.className, true, entry.loader);
+    }
+
+    public Player newPlayer(String name, int turn, int timeLimit)
+            throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        PlayerEntry entry = players.get(name);
+        if (entry == null) {
+            throw new ClassNotFoundException("Unknown player " + name);
+        }
+        MethodHandle factory = entry.factory;
+        if (factory == null) {
+            Class<?> klazz = Class.forName(entry.className, true, entry.loader);
+            factory = MethodHandles.publicLookup()
+                    .findConstructor(klazz, MethodType.methodType(void.class, String.class, Integer.TYPE, Integer.TYPE))
+                    .asType(FACTORY_TYPE);
+            entry.factory = factory;
+        }
+        try {
+            return (Player) factory.invokeExact(name, turn, timeLimit);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    // Player classes in one class file or jar, from the index if the file hasn't changed
+    private List<String> scanUnit(File unit, ClassLoader loader) throws IOException {
+        IndexEntry cached = index.get(unit.getPath());
+        if (cached != null && cached.modified == unit.lastModified() && cached.length == unit.length()) {
+            return cached.classNames;
+        }
+
+        List<String> classNames = new ArrayList<String>();
+        if (unit.getName().endsWith(CLASS_FILE_SUFFIX)) {
+            String className = classNameOf(unit);
+            if (className != null && isPlayer(className, loader)) {
+                classNames.add(className);
+            }
+        } else if (unit.getName().endsWith(JAR_FILE_SUFFIX)) {
+            String prefix = playersPackage.replace(PKG_SEPARATOR, DIR_SEPARATOR) + DIR_SEPARATOR;
+            try (JarFile jar = new JarFile(unit)) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement().getName();
+                    if (entryName.startsWith(prefix) && entryName.endsWith(CLASS_FILE_SUFFIX)) {
+                        String className = entryName.substring(0, entryName.length() - CLASS_FILE_SUFFIX.length())
+                                .replace(DIR_SEPARATOR, PKG_SEPARATOR);
+                        if (isPlayer(className, loader)) {
+                            classNames.add(className);
+                        }
+                    }
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private String computeFingerprint(PlayerEntry entry) throws IOException {
+        MessageDigest digest = newDigest();
+        for (String dataFile : getDataFiles(entry)) {
+            File file = new File(dataFile);
+            digest.update(dataFile.getBytes("UTF-8"));
+            if (file.isFile()) {
+                digest.update(Files.readAllBytes(file.toPath()));
+            } else {
+                digest.update((byte) 0); // a missing file is part of the fingerprint too
+            }
+        }
+        if (!entry.source.getName().endsWith(CLASS_FILE_SUFFIX)) {
+            digest.update(Files.readAllBytes(entry.source.toPath()));
+            return toHex(digest.digest());
+        }
+        // The player's class, its nested classes and the helpers next to it, in a fixed order
+        String simpleName = entry.source.getName().substring(0, entry.source.getName().length() - CLASS_FILE_SUFFIX.length());
+        File packageDir = entry.source.getParentFile();
+        String relativeName = entry.className.substring(playersPackage.length() + 1);
+        for (int i = relativeName.indexOf(PKG_SEPARATOR); i >= 0; i = relativeName.indexOf(PKG_SEPARATOR, i + 1)) {
+            packageDir = packageDir.getParentFile(); // the player is in a subpackage
+        }
+        String packagePath = packageDir.getPath();
+        List<File> classFiles = listClassFiles(packageDir);
+        Collections.sort(classFiles);
+        for (File classFile : classFiles) {
+            boolean own = classFile.equals(entry.source) || (classFile.getParentFile().equals(entry.source.getParentFile())
+                    && classFile.getName().startsWith(simpleName + "$"));
+            if (own || !isPlayerFile(classFile)) {
+                digest.update(classFile.getPath().substring(packagePath.length()).getBytes("UTF-8"));
+                digest.update(Files.readAllBytes(classFile.toPath()));
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    // The data files a player declares in its DATA_FILES field, none if it has no such field
+    private static String[] getDataFiles(PlayerEntry entry) {
+        try {
+            Field field = Class.forName(entry.className, false, entry.loader).getField(DATA_FILES_FIELD);
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String[].class) {
+                String[] dataFiles = (String[]) field.get(null);
+                if (dataFiles != null) {
+                    return dataFiles;
+                }
+            }
+        } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException | LinkageError ignore) {
+            // no data files
+        }
+        return new String[0];
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Whether a class file holds a player (or a nested class of one)
+    private boolean isPlayerFile(File classFile) {
+        IndexEntry entry = index.get(classFile.getPath());
+        if (entry != null && !entry.classNames.isEmpty()) {
+            return true;
+        }
+        String name = classFile.getName();
+        int nested = name.indexOf('$');
+        if (nested < 0) {
+            return false;
+        }
+        entry = index.get(new File(classFile.getParentFile(), name.substring(0, nested) + CLASS_FILE_SUFFIX).getPath());
+        return entry != null && !entry.classNames.isEmpty();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private boolean isPlayer(String className, ClassLoader loader) {
+        try {
+            Class<?> klazz = Class.forName(className, false, loader);
+            if (klazz == Player.class || !Player.class.isAssignableFrom(klazz)
+                    || Modifier.isAbstract(klazz.getModifiers())) {
+                return false;
+            }
+            klazz.getConstructor(String.class, Integer.TYPE, Integer.TYPE);
+            return true;
+        } catch (ClassNotFoundException | NoSuchMethodException | LinkageError ignore) {
+            return false;
+        }
+    }
+
+    // Class name of a class file inside a class path directory
+    private String classNameOf(File classFile) {
+        String path = classFile.getPath().replace(File.separatorChar, DIR_SEPARATOR);
+        String packagePath = DIR_SEPARATOR + playersPackage.replace(PKG_SEPARATOR, DIR_SEPARATOR) + DIR_SEPARATOR;
+        int start = path.lastIndexOf(packagePath);
+        if (start < 0) {
+            return null;
+        }
+        return path.substring(start + 1, path.length() - CLASS_FILE_SUFFIX.length()).replace(DIR_SEPARATOR, PKG_SEPARATOR);
+    }
+
+    private static List<File> listClassFiles(File directory) {
+        List<File> classFiles = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return classFiles;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                classFiles.addAll(listClassFiles(file));
+            } else if (file.getName().endsWith(CLASS_FILE_SUFFIX)) {
+                classFiles.add(file);
+            }
+        }
+        return classFiles;
+    }
+
+    private void readIndex() {
+        if (indexFile == null || !indexFile.exists()) {
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(INDEX_SEPARATOR, -1);
+                if (fields.length != 4) {
+                    continue;
+                }
+                List<String> classNames = new ArrayList<String>();
+                for (String className : fields[3].split(",")) {
+                    if (!className.isEmpty()) {
+                        classNames.add(className);
+                    }
+                }
+                index.put(fields[0], new IndexEntry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), classNames));
+            }
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeIndex() {
+        if (indexFile == null) {
+            return;
+        }
+        // Several tournament workers may write the index at once, so write a copy and move it in place
+        File temporary = new File(indexFile.getPath() + "." + Thread.currentThread().getId() + "." + System.nanoTime());
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temporary), "UTF-8"))) {
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                IndexEntry value = entry.getValue();
+                out.println(entry.getKey() + INDEX_SEPARATOR + value.modified + INDEX_SEPARATOR + value.length
+                        + INDEX_SEPARATOR + String.join(",", value.classNames));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            temporary.delete();
+            return;
+        }
+        try {
+            Files.move(temporary.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temporary.delete();
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package Utilities;
+/**
+ * This plays random games (playouts) from a position, many of them at
+ * once: every lane of the engine holds one game, and each round makes
+ * one random move in every lane that is still playing. A lane that
+ * finishes starts the next playout right away.
+ *
+ * Boards that fit into a 64-bit bitboard (see StateTree.hasBitboards)
+ * are played on a pair of longs per lane, where a drop is one OR and a
+ * win check a few shifts on the mover's pieces. Bigger boards are played
+ * on packed boards, checking only the lines through the dropped piece. Either way the rules
+ * are the referee's: pop moves are allowed once per player, and a game
+ * ends when one player has more n-in-a-rows than the other or the board
+ * is full.
+ *
+ * run() plays the same number of playouts after every legal move of the
+ * position and counts wins, losses and draws per move for the player to
+ * move. An engine is not thread safe, give every thread its own (split()
+ * makes one with an independent random generator).
+ */
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+
+public class PlayoutEngine
+{
+	public static final int DEFAULT_LANES = 64;
+	private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}}; // {row step, column step}
+	private static final PrintStream NULL_OUT = new PrintStream(new OutputStream() {
+		public void write(int b) {} // boards of the engine have nothing to say
+	});
+
+	private final int rows, columns, winNumber;
+	private final int lanes;
+	private final SplittableRandom random;
+	private final boolean bitboards;
+	private final int[] moveBuffer;
+
+	// Bitboard lanes: bit column * (rows + 1) + row, the extra bit of each column stays empty
+	private final int height; // rows + 1
+	private final long[] pieces1, pieces2;
+	private final byte[] heights; // heights[lane * columns + column]
+	private final long[] columnMasks;
+	private long rootPieces1, rootPieces2;
+	private final byte[] rootHeights;
+
+	// Packed lanes, for boards too big for a long
+	private final StateTree[] boards;
+	private final boolean[] tied; // both players have the same number of lines, so a drop can't be judged locally
+
+	// State every lane has
+	private final int[] turns;
+	private final int[] popped; // bit 1 if player1 has popped, bit 2 for player2
+	private final int[] pieceCounts;
+	private final int[] rootMoves; // index into the root moves of the playout in the lane
+	private final int[] playing; // lanes with a game going on
+
+	private final StateTree root;
+	private boolean rootTied;
+
+	public PlayoutEngine(int r, int c, int w, long seed)
+	{
+		this(r, c, w, DEFAULT_LANES, new SplittableRandom(seed));
+	}
+
+	public PlayoutEngine(int r, int c, int w, int l, SplittableRandom rng)
+	{
+		rows = r;
+		columns = c;
+		winNumber = w;
+		lanes = l;
+		random = rng;
+		moveBuffer = new int[2 * columns];
+		height = rows + 1;
+		bitboards = height * columns <= 64;
+		root = newBoard();
+		turns = new int[lanes];
+		popped = new int[lanes];
+		pieceCounts = new int[lanes];
+		rootMoves = new int[lanes];
+		playing = new int[lanes];
+		if(bitboards)
+		{
+			pieces1 = new long[lanes];
+			pieces2 = new long[lanes];
+			heights = new byte[lanes * columns];
+			columnMasks = new long[columns];
+			rootHeights = new byte[columns];
+			for(int j=0; j<columns; j++)
+				columnMasks[j] = ((1L << rows) - 1) << (j * height);
+			boards = null;
+			tied = null;
+		}
+		else
+		{
+			pieces1 = null;
+			pieces2 = null;
+			heights = null;
+			columnMasks = null;
+			rootHeights = null;
+			boards = new StateTree[lanes];
+			tied = new boolean[lanes];
+			for(int lane=0; lane<lanes; lane++)
+				boards[lane] = newBoard();
+		}
+	}
+
+	// A new engine for the same geometry with its own random generator, for another thread
+	public PlayoutEngine split()
+	{
+		return new PlayoutEngine(rows, columns, winNumber, lanes, random.split());
+	}
+
+	// True if this engine plays on bitboards, false if on packed boards
+	public boolean usesBitboards()
+	{
+		return bitboards;
+	}
+
+	// Plays the given number of playouts after every legal move of the position. The legal moves
+	// are written into moves as int moves (see Move), and wins[i], losses[i] and draws[i] get the
+	// results after moves[i] for the player to move in the position. Every array needs room for
+	// 2 * columns entries. Returns the number of legal moves.
+	public int run(StateTree position, int playoutsPerMove, int[] moves, int[] wins, int[] losses, int[] draws)
+	{
+		root.copyFrom(position);
+		int moveCount = root.generateMoves(moves);
+		for(int i=0; i<moveCount; i++)
+		{
+			wins[i] = 0;
+			losses[i] = 0;
+			draws[i] = 0;
+		}
+		if(bitboards)
+		{
+			rootPieces1 = root.getBitboard(1);
+			rootPieces2 = root.getBitboard(2);
+			for(int j=0; j<columns; j++)
+				rootHeights[j] = (byte) root.getHeight(j);
+		}
+		else
+			rootTied = ((PackedStorage) root.getStorage()).countLines(1, winNumber) > 0;
+
+		int player = root.turn;
+		long total = (long) moveCount * playoutsPerMove;
+		long started = 0;
+		int active = 0;
+		// Fill the lanes, then keep every lane busy until all playouts are started
+		for(int lane=0; lane<lanes && started<total; lane++)
+		{
+			int winner = start(lane, moves, (int) (started++ % moveCount));
+			while(winner != 0 && started < total)
+			{
+				record(winner, player, rootMoves[lane], wins, losses, draws);
+				winner = start(lane, moves, (int) (started++ % moveCount));
+			}
+			if(winner != 0)
+				record(winner, player, rootMoves[lane], wins, losses, draws);
+			else
+				playing[active++] = lane;
+		}
+		while(active > 0)
+		{
+			for(int k=0; k<active; k++)
+			{
+				int lane = playing[k];
+				int winner = bitboards ? stepBits(lane) : stepBoard(lane);
+				while(winner != 0)
+				{
+					record(winner, player, rootMoves[lane], wins, losses, draws);
+					if(started == total)
+						break;
+					winner = start(lane, moves, (int) (started++ % moveCount));
+				}
+				if(winner != 0)
+					playing[k--] = playing[--active]; // no playouts left for this lane
+			}
+		}
+		return moveCount;
+	}
+
+	private static void record(int winner, int player, int index, int[] wins, int[] losses, int[] draws)
+	{
+		if(winner == player)
+			wins[index]++;
+		else if(winner == 3)
+			draws[index]++;
+		else
+			losses[index]++;
+	}
+
+	// Sets a lane to the root position and makes the given root move in it.
+	// Returns the winner if that move ends the game (3 for a tie), 0 otherwise.
+	private int start(int lane, int[] moves, int index)
+	{
+		rootMoves[lane] = index;
+		turns[lane] = root.turn;
+		popped[lane] = (root.pop1 ? 1 : 0) | (root.pop2 ? 2 : 0);
+		pieceCounts[lane] = root.getPieceCount();
+		if(bitboards)
+		{
+			pieces1[lane] = rootPieces1;
+			pieces2[lane] = rootPieces2;
+			System.arraycopy(rootHeights, 0, heights, lane * columns, columns);
+			return moveBits(lane, moves[index]);
+		}
+		boards[lane].copyFrom(root);
+		tied[lane] = rootTied;
+		return moveBoard(lane, moves[index]);
+	}
+
+	// ====== BITBOARD LANES ======
+
+	private int stepBits(int lane)
+	{
+		int player = turns[lane];
+		boolean canPop = (popped[lane] & player) == 0;
+		long mine = (player == 1) ? pieces1[lane] : pieces2[lane];
+		int base = lane * columns;
+		int count = 0;
+		for(int j=0; j<columns; j++)
+		{
+			int columnHeight = heights[base + j];
+			if(canPop && columnHeight > 0 && (mine & (1L << (j * height))) != 0)
+				moveBuffer[count++] = Move.encode(true, j);
+			if(columnHeight < rows)
+				moveBuffer[count++] = Move.encode(false, j);
+		}
+		if(count == 0)
+			return 3;
+		return moveBits(lane, moveBuffer[random.nextInt(count)]);
+	}
+
+	private int moveBits(int lane, int move)
+	{
+		int player = turns[lane];
+		int column = Move.column(move);
+		int index = lane * columns + column;
+		turns[lane] = 3 - player;
+		if(Move.isPop(move))
+		{
+			// Every piece of the column falls one row, so both players' lines may change
+			long mask = columnMasks[column];
+			pieces1[lane] = (pieces1[lane] & ~mask) | ((pieces1[lane] & mask) >>> 1 & mask);
+			pieces2[lane] = (pieces2[lane] & ~mask) | ((pieces2[lane] & mask) >>> 1 & mask);
+			heights[index]--;
+			pieceCounts[lane]--;
+			popped[lane] |= player;
+			return judge(lane);
+		}
+		long bit = 1L << (column * height + heights[index]);
+		heights[index]++;
+		pieceCounts[lane]++;
+		long mine;
+		if(player == 1)
+			mine = pieces1[lane] |= bit;
+		else
+			mine = pieces2[lane] |= bit;
+		// Only the mover's lines can change, so the game goes on unless the mover has one now
+		if(hasLine(mine))
+			return judge(lane);
+		return (pieceCounts[lane] == rows * columns) ? 3 : 0;
+	}
+
+	// Same decision as Referee.checkForWinner
+	private int judge(int lane)
+	{
+		int points = countLines(pieces1[lane]) - countLines(pieces2[lane]);
+		if(points > 0)
+			return 1;
+		if(points < 0)
+			return 2;
+		return (pieceCounts[lane] == rows * columns) ? 3 : 0;
+	}
+
+	private boolean hasLine(long pieces)
+	{
+		return lineStarts(pieces, 1) != 0 || lineStarts(pieces, height) != 0
+				|| lineStarts(pieces, height + 1) != 0 || lineStarts(pieces, height - 1) != 0;
+	}
+
+	// Every cell that starts winNumber pieces in a row counts, like in Referee.checkConnect
+	private int countLines(long pieces)
+	{
+		return Long.bitCount(lineStarts(pieces, 1)) + Long.bitCount(lineStarts(pieces, height))
+				+ Long.bitCount(lineStarts(pieces, height + 1)) + Long.bitCount(lineStarts(pieces, height - 1));
+	}
+
+	// Bits of the cells that start winNumber pieces in a row with the given bit step
+	private long lineStarts(long pieces, int step)
+	{
+		long starts = pieces;
+		for(int k=1; k<winNumber && starts!=0; k++)
+			starts &= pieces >>> (k * step);
+		return starts;
+	}
+
+	// ====== PACKED LANES ======
+
+	private int stepBoard(int lane)
+	{
+		int count = boards[lane].generateMoves(moveBuffer);
+		if(count == 0)
+			return 3;
+		return moveBoard(lane, moveBuffer[random.nextInt(count)]);
+	}
+
+	private int moveBoard(int lane, int move)
+	{
+		StateTree board = boards[lane];
+		int player = board.turn;
+		int column = Move.column(move);
+		board.makeMove(move);
+		if(Move.isPop(move) || tied[lane])
+		{
+			// Lines of both players may have changed, count them all
+			PackedStorage storage = (PackedStorage) board.getStorage();
+			int lines1 = storage.countLines(1, winNumber);
+			int lines2 = storage.countLines(2, winNumber);
+			if(lines1 > lines2)
+				return 1;
+			if(lines2 > lines1)
+				return 2;
+			tied[lane] = lines1 > 0;
+		}
+		else if(completesLine(board, board.getHeight(column) - 1, column, player))
+			return player; // the opponent has no lines, or the game would be over
+		return board.isFull() ? 3 : 0;
+	}
+
+	// True if the piece in the given cell is part of winNumber of the player's pieces in a row
+	private boolean completesLine(StateTree board, int row, int column, int player)
+	{
+		for(int[] direction : DIRECTIONS)
+		{
+			int rowStep = direction[0];
+			int columnStep = direction[1];
+			int count = 1;
+			for(int sign=-1; sign<=1; sign+=2)
+			{
+				int r = row + sign * rowStep;
+				int c = column + sign * columnStep;
+				while(count < winNumber && r >= 0 && r < rows && c >= 0 && c < columns && board.getCell(r, c) == player)
+				{
+					count++;
+					r += sign * rowStep;
+					c += sign * columnStep;
+				}
+			}
+			if(count >= winNumber)
+				return true;
+		}
+		return false;
+	}
+
+	private StateTree newBoard()
+	{
+		BoardStorage storage = (height * columns <= 64) ? null : new PackedStorage(rows, columns);
+		StateTree board = new StateTree(rows, columns, winNumber, 1, false, false, null, storage) {};
+		board.setOut(NULL_OUT);
+		return board;
+	}
+}
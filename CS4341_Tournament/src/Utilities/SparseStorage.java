@@ -0,0 +1,87 @@
+package Utilities;
+/**
+ * This stores a board for very large geometries. Every column keeps
+ * its pieces in a byte array that grows as pieces are dropped, empty
+ * columns have no array at all. Memory grows with the number of pieces
+ * played (plus one reference per column) instead of rows x columns.
+ * 
+ * getMatrix() has to build a whole matrix, so avoid it on big boards
+ * and read cells with StateTree.getCell or a BoardView instead.
+ */
+
+public class SparseStorage implements BoardStorage
+{
+	private static final int INITIAL_CAPACITY = 4;
+	
+	private final int rows, columns;
+	private final byte[][] cells; // cells[column][row], null until something is dropped in the column
+	
+	public SparseStorage(int r, int c)
+	{
+		rows = r;
+		columns = c;
+		cells = new byte[columns][];
+	}
+	
+	public int get(int row, int column)
+	{
+		byte[] columnCells = cells[column];
+		if(columnCells == null || row >= columnCells.length)
+			return 0;
+		return columnCells[row];
+	}
+	
+	public void set(int row, int column, int value)
+	{
+		byte[] columnCells = cells[column];
+		if(columnCells == null || row >= columnCells.length)
+		{
+			if(value == 0)
+				return;
+			int capacity = (columnCells == null) ? INITIAL_CAPACITY : columnCells.length;
+			while(capacity <= row)
+				capacity *= 2;
+			byte[] grown = new byte[Math.min(capacity, rows)];
+			if(columnCells != null)
+				System.arraycopy(columnCells, 0, grown, 0, columnCells.length);
+			cells[column] = grown;
+			columnCells = grown;
+		}
+		columnCells[row] = (byte) value;
+	}
+	
+	public void pop(int column, int height)
+	{
+		byte[] columnCells = cells[column];
+		if(columnCells == null || height == 0)
+			return;
+		System.arraycopy(columnCells, 1, columnCells, 0, height-1);
+		columnCells[height-1] = 0;
+	}
+	
+	public BoardStorage newEmpty()
+	{
+		return new SparseStorage(rows, columns);
+	}
+	
+	public void copyFrom(BoardStorage other)
+	{
+		byte[][] otherCells = ((SparseStorage) other).cells;
+		for(int j=0; j<columns; j++)
+			cells[j] = (otherCells[j] == null) ? null : otherCells[j].clone();
+	}
+	
+	public int[][] getMatrix()
+	{
+		int[][] matrix = new int[rows][columns];
+		for(int j=0; j<columns; j++)
+		{
+			byte[] columnCells = cells[j];
+			if(columnCells == null)
+				continue;
+			for(int i=0; i<columnCells.length; i++)
+				matrix[i][j] = columnCells[i];
+		}
+		return matrix;
+	}
+}
@@ -23,18 +23,31 @@ public abstract class StateTree
 {
 	public int rows, columns, winNumber, turn; // board parameters
 	public boolean pop1, pop2; // true if the player has used their pop move
-	int[][] boardMatrix; // matrix representing the board (0 = empty, 1 = player1, 2 = player2)
+	BoardStorage storage; // the cells of the board (0 = empty, 1 = player1, 2 = player2)
+	int[] heights; // number of pieces in each column
+	int pieceCount; // number of pieces on the board
+	private boolean matrixDirty = false; // getBoardMatrix() handed out the matrix since the last recount
+	private boolean matrixWritable = false; // getBoardMatrix() handed out the matrix since the last copyFrom
 	public StateTree parent; // parent state
 	public ArrayList<StateTree> children; // list of children states
 	private PrintStream out = null;
+	private BoardView view = null; // created the first time somebody asks for it
 	
 	
 	public StateTree(int r, int c, int w, int t, boolean p1, boolean p2, StateTree p)
+	{
+		this(r, c, w, t, p1, p2, p, null);
+	}
+	
+	// Same as above, but stores the cells in the given (empty) storage, null means a plain matrix
+	public StateTree(int r, int c, int w, int t, boolean p1, boolean p2, StateTree p, BoardStorage s)
 	{
 		rows = r;
 		columns = c;
 		winNumber = w;
-		boardMatrix = new int[rows][columns];
+		storage = (s != null) ? s : new DenseStorage(rows, columns);
+		heights = new int[columns];
+		pieceCount = 0;
 		turn = t;
 		pop1 = p1;
 		pop2 = p2;
@@ -48,19 +61,20 @@ public abstract class StateTree
 	// Checks if the given move is valid in the current state
 	public boolean validMove(Move move)
 	{
+		sync();
 		if(move.column >= columns || move.column < 0)
 		{
 			out.println("That column doesn't exist.");
 			return false;
 		}
-		if(!move.pop && boardMatrix[rows-1][move.column] != 0)
+		if(!move.pop && heights[move.column] == rows)
 		{
 			out.println("That column is full.");
 			return false;
 		}
 		if(move.pop)
 		{
-			if(boardMatrix[0][move.column] != turn)
+			if(storage.get(0, move.column) != turn)
 			{
 				out.println("You can't pop a piece that isn't your own.");
 				return false;
@@ -74,35 +88,138 @@ public abstract class StateTree
 		return true;
 	}
 	
+	// Same as above for an int move (see Move), without printing anything
+	public boolean validMove(int move)
+	{
+		int column = Move.column(move);
+		if(column >= columns || column < 0)
+			return false;
+		return Move.isPop(move) ? canPop(column) : canDrop(column);
+	}
+	
 	// Makes the given move on the board and updates the state
 	public void makeMove(Move move)
 	{
-		if(move.pop)
+		makeMove(move.pop, move.column);
+	}
+	
+	// Same as above for an int move (see Move)
+	public void makeMove(int move)
+	{
+		makeMove(Move.isPop(move), Move.column(move));
+	}
+	
+	// Writes every legal move of the player to move into moves as int moves (see Move)
+	// and returns how many there are. moves needs room for 2 * columns moves.
+	public int generateMoves(int[] moves)
+	{
+		sync();
+		int count = 0;
+		boolean popUsed = (turn == 1) ? pop1 : pop2;
+		for(int j=0; j<columns; j++)
+		{
+			if(!popUsed && heights[j] > 0 && storage.get(0, j) == turn)
+				moves[count++] = Move.encode(true, j);
+			if(heights[j] < rows)
+				moves[count++] = Move.encode(false, j);
+		}
+		return count;
+	}
+	
+	private void makeMove(boolean pop, int column)
+	{
+		sync();
+		if(pop)
 		{
 			if(turn == 1)
 				pop1 = true;
 			if(turn == 2)
 				pop2 = true;
-			for(int i=0; i<rows-1; i++)
+			int height = heights[column];
+			if(height > 0)
 			{
-				boardMatrix[i][move.column] = boardMatrix[i+1][move.column];
+				storage.pop(column, height);
+				heights[column] = height - 1;
+				pieceCount--;
 			}
-			boardMatrix[rows-1][move.column] = 0;
 			turn = Math.abs(turn-3);
 			return;
 		}
+		else if(heights[column] < rows)
+		{
+			storage.set(heights[column], column, turn);
+			heights[column]++;
+			pieceCount++;
+			turn = Math.abs(turn-3);
+		}
+	}
+	
+	// True if a piece can be dropped into the given column
+	public boolean canDrop(int column)
+	{
+		sync();
+		return heights[column] < rows;
+	}
+	
+	// True if the player whose turn it is can pop the given column
+	public boolean canPop(int column)
+	{
+		sync();
+		return heights[column] > 0 && storage.get(0, column) == turn && !(turn == 1 ? pop1 : pop2);
+	}
+	
+	// True if there is no empty cell left
+	public boolean isFull()
+	{
+		sync();
+		return pieceCount == rows * columns;
+	}
+	
+	// Makes this board a copy of the given board with the same size
+	public void copyFrom(StateTree other)
+	{
+		// A handed-out matrix may hold pieces above a gap, which the recount doesn't see
+		boolean written = matrixWritable;
+		matrixWritable = false;
+		sync();
+		other.sync();
+		if(storage.getClass() == other.storage.getClass())
+			storage.copyFrom(other.storage);
 		else
 		{
-			for(int i=0; i<rows; i++)
+			// Cells above the other board's heights are empty there
+			for(int j=0; j<columns; j++)
 			{
-				if(boardMatrix[i][move.column] == 0)
+				int height = other.heights[j];
+				for(int i=0; i<height; i++)
+					storage.set(i, j, other.storage.get(i, j));
+				int top = written ? rows : heights[j];
+				for(int i=height; i<top; i++)
 				{
-					boardMatrix[i][move.column] = turn;
-					turn = Math.abs(turn-3);
-					return;
+					if(storage.get(i, j) != 0)
+						storage.set(i, j, 0);
 				}
 			}
 		}
+		System.arraycopy(other.heights, 0, heights, 0, columns);
+		pieceCount = other.pieceCount;
+		turn = other.turn;
+		pop1 = other.pop1;
+		pop2 = other.pop2;
+	}
+	
+	// Recounts column heights and pieces from the cells
+	public void resync()
+	{
+		pieceCount = 0;
+		for(int j=0; j<columns; j++)
+		{
+			int height = 0;
+			while(height < rows && storage.get(height, j) != 0)
+				height++;
+			heights[j] = height;
+			pieceCount += height;
+		}
 	}
 	
 	// Prints the board
@@ -112,15 +229,129 @@ public abstract class StateTree
 		{
 		    for (int j = 0; j < columns; j++)
 		    {
-		        out.print(boardMatrix[i][j] + " ");
+		        out.print(storage.get(i, j) + " ");
 		    }
 		    out.println();
 		}
 		out.println();
 	}
 	
+	// Recounts heights and pieces once after the matrix was handed out, somebody may have written into it
+	private void sync()
+	{
+		if(matrixDirty)
+		{
+			matrixDirty = false;
+			resync();
+		}
+	}
+	
+	// The board's own cells, writing into them changes the board. Heights and pieces
+	// are recounted once, the next time they are used; call getBoardMatrix() again
+	// (or resync()) before writing into the matrix after that.
+	// A board stored otherwise (see BoardStorage) is moved into a plain matrix first.
 	public int[][] getBoardMatrix() {
-		return boardMatrix;
+		if(!(storage instanceof DenseStorage))
+		{
+			sync();
+			BoardStorage dense = new DenseStorage(rows, columns);
+			for(int j=0; j<columns; j++)
+			{
+				for(int i=0; i<heights[j]; i++)
+					dense.set(i, j, storage.get(i, j));
+			}
+			storage = dense;
+		}
+		matrixDirty = true;
+		matrixWritable = true;
+		return storage.getMatrix();
+	}
+	
+	public BoardStorage getStorage() {
+		return storage;
+	}
+	
+	// The piece in the given cell (0 = empty, 1 = player1, 2 = player2)
+	public int getCell(int row, int column)
+	{
+		return storage.get(row, column);
+	}
+	
+	// Number of pieces in the given column
+	public int getHeight(int column)
+	{
+		sync();
+		return heights[column];
+	}
+	
+	// Number of pieces on the whole board
+	public int getPieceCount()
+	{
+		sync();
+		return pieceCount;
+	}
+	
+	// True if the board fits into 64-bit bitboards, see BoardView
+	public boolean hasBitboards()
+	{
+		return (rows + 1) * columns <= 64;
+	}
+	
+	// Bitboard of the given player, see BoardView
+	public long getBitboard(int player)
+	{
+		sync();
+		long bitboard = 0;
+		for(int j=0; j<columns; j++)
+		{
+			for(int i=0; i<heights[j]; i++)
+			{
+				if(storage.get(i, j) == player)
+					bitboard |= 1L << (j * (rows + 1) + i);
+			}
+		}
+		return bitboard;
+	}
+	
+	// Key of the position for transposition tables, only valid if hasBitboards() is true
+	public long getPositionKey()
+	{
+		long position = getBitboard(turn);
+		long mask = position | getBitboard(Math.abs(turn-3));
+		long bottom = 0;
+		for(int j=0; j<columns; j++)
+			bottom |= 1L << (j * (rows + 1));
+		// position + mask + bottom is unique for every board, the rest tells whose turn it is and who popped
+		long key = position + mask + bottom;
+		key ^= (turn == 1) ? 0x9E3779B97F4A7C15L : 0;
+		key ^= pop1 ? 0xC2B2AE3D27D4EB4FL : 0;
+		key ^= pop2 ? 0x165667B19E3779F9L : 0;
+		return key;
+	}
+	
+	// A read-only view of this board, see BoardView
+	public BoardView getView()
+	{
+		if(view == null)
+			view = new View();
+		return view;
+	}
+	
+	// Reads straight from the board it belongs to
+	private class View implements BoardView
+	{
+		public int getRows() { return rows; }
+		public int getColumns() { return columns; }
+		public int getWinNumber() { return winNumber; }
+		public int getTurn() { return turn; }
+		public int getCell(int row, int column) { return StateTree.this.getCell(row, column); }
+		public int getHeight(int column) { return StateTree.this.getHeight(column); }
+		public int getPieceCount() { return StateTree.this.getPieceCount(); }
+		public boolean hasPopped(int player) { return player == 1 ? pop1 : pop2; }
+		public boolean hasBitboards() { return StateTree.this.hasBitboards(); }
+		public long getBitboard(int player) { return StateTree.this.getBitboard(player); }
+		public boolean hasPositionKey() { return StateTree.this.hasBitboards(); }
+		public long getPositionKey() { return StateTree.this.getPositionKey(); }
 	}
 	
 	public void setOut(PrintStream printStream) {
@@ -16,7 +16,7 @@ import java.util.HashMap;
 public class StaticExceptionCounter {
 	private static HashMap<String, Integer> exceptions = new HashMap<String, Integer>();
 	
-	public static void addException(String playerName) {
+	public static synchronized void addException(String playerName) {
 		Integer n_exceptions = exceptions.get(playerName);
 		if (n_exceptions == null) {
 			exceptions.put(playerName, 1);
@@ -29,4 +29,9 @@ public class StaticExceptionCounter {
 	public static HashMap<String, Integer> getExceptionsStatistics() {
 		return exceptions;
 	}
+	
+	// A copy of the counts, safe to read while battles are running
+	public static synchronized HashMap<String, Integer> getSnapshot() {
+		return new HashMap<String, Integer>(exceptions);
+	}
 }
\ No newline at end of file
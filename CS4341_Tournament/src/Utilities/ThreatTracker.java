@@ -0,0 +1,226 @@
+package Utilities;
+/**
+ * This keeps track of the threats on a board: the empty cells where a
+ * player would complete winNumber (or more) pieces in a row by putting
+ * a piece there. Make your moves through the tracker and it updates the
+ * threats around the changed cells only, instead of checking the whole
+ * board like Referee.checkForWinner does.
+ *
+ * A threat is playable if it is the lowest empty cell of its column,
+ * i.e. dropping a piece there wins right away. Pop moves are not
+ * considered to be winning moves. These questions are answered in O(1):
+ * can a player win right now (hasWinningMove), where does a player have
+ * to drop to stop the opponent from winning (getForcedBlock) and does a
+ * player have two threats the opponent can't both stop (hasDoubleThreat).
+ *
+ * A drop costs O(winNumber^2) to track, a pop O(rows * winNumber^2).
+ */
+
+public class ThreatTracker
+{
+	private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {-1, 1}}; // {row step, column step}
+
+	private final StateTree board;
+	private final int rows, columns, winNumber;
+	private final byte[] threats; // threats[column * rows + row], bit 1 for player1 and bit 2 for player2
+	private final byte[] playable; // per column, the threat bits of its lowest empty cell
+	private final byte[] stacked; // per column, bits of players with threats on both of its two lowest empty cells
+	private final int[] playableCount = new int[3]; // per player, columns where dropping wins
+	private final int[] playableColumnSum = new int[3]; // per player, sum of those columns
+	private final int[] stackedCount = new int[3]; // per player, columns with stacked threats
+
+	// Starts tracking the given board, which should only be changed through this tracker from now on
+	public ThreatTracker(StateTree b)
+	{
+		board = b;
+		rows = b.rows;
+		columns = b.columns;
+		winNumber = b.winNumber;
+		threats = new byte[rows * columns];
+		playable = new byte[columns];
+		stacked = new byte[columns];
+		refreshColumns(0, columns - 1);
+	}
+
+	public StateTree getBoard()
+	{
+		return board;
+	}
+
+	public void makeMove(Move move)
+	{
+		makeMove(move.toInt());
+	}
+
+	// Makes an int move (see Move) on the board and updates the threats
+	public void makeMove(int move)
+	{
+		int column = Move.column(move);
+		board.makeMove(move);
+		if(Move.isPop(move))
+		{
+			// Every piece of the column fell, so every line crossing it may have changed
+			refreshColumns(column - winNumber + 1, column + winNumber - 1);
+			return;
+		}
+		int row = board.getHeight(column) - 1;
+		for(int[] direction : DIRECTIONS)
+		{
+			for(int k=-(winNumber-1); k<winNumber; k++)
+			{
+				int r = row + k * direction[0];
+				int c = column + k * direction[1];
+				if(r >= 0 && r < rows && c >= 0 && c < columns)
+					refreshCell(r, c);
+			}
+		}
+		for(int c=Math.max(0, column - winNumber + 1); c<=Math.min(columns - 1, column + winNumber - 1); c++)
+			refreshSummary(c);
+	}
+
+	// Makes this tracker (and its board) a copy of another tracker of the same size
+	public void copyFrom(ThreatTracker other)
+	{
+		board.copyFrom(other.board);
+		System.arraycopy(other.threats, 0, threats, 0, threats.length);
+		System.arraycopy(other.playable, 0, playable, 0, columns);
+		System.arraycopy(other.stacked, 0, stacked, 0, columns);
+		System.arraycopy(other.playableCount, 0, playableCount, 0, 3);
+		System.arraycopy(other.playableColumnSum, 0, playableColumnSum, 0, 3);
+		System.arraycopy(other.stackedCount, 0, stackedCount, 0, 3);
+	}
+
+	// True if the given player would complete a line by putting a piece in this empty cell
+	public boolean isThreat(int player, int row, int column)
+	{
+		return (threats[column * rows + row] & player) != 0;
+	}
+
+	// True if the given player wins by dropping a piece into this column
+	public boolean isWinningDrop(int player, int column)
+	{
+		return (playable[column] & player) != 0;
+	}
+
+	public boolean hasWinningMove(int player)
+	{
+		return playableCount[player] > 0;
+	}
+
+	// Number of columns the given player can win in right now
+	public int getWinningMoveCount(int player)
+	{
+		return playableCount[player];
+	}
+
+	// Writes the winning drops of the given player into moves as int moves and returns how many there are
+	public int getWinningMoves(int player, int[] moves)
+	{
+		int count = 0;
+		for(int c=0; c<columns && count<playableCount[player]; c++)
+		{
+			if((playable[c] & player) != 0)
+				moves[count++] = Move.encode(false, c);
+		}
+		return count;
+	}
+
+	// The column the given player has to drop into so the opponent can't win with its next drop,
+	// -1 if there is no such threat. If the opponent has several, one of them is returned.
+	public int getForcedBlock(int player)
+	{
+		int opponent = 3 - player;
+		if(playableCount[opponent] == 0)
+			return -1;
+		if(playableCount[opponent] == 1)
+			return playableColumnSum[opponent];
+		for(int c=0; c<columns; c++)
+		{
+			if((playable[c] & opponent) != 0)
+				return c;
+		}
+		return -1;
+	}
+
+	// True if the opponent can't stop the given player: two winning drops at once,
+	// or two threats on top of each other so blocking the lower one gives away the upper one
+	public boolean hasDoubleThreat(int player)
+	{
+		return playableCount[player] >= 2 || stackedCount[player] > 0;
+	}
+
+	// Recomputes every cell and summary of the given (clipped) range of columns
+	private void refreshColumns(int from, int to)
+	{
+		from = Math.max(0, from);
+		to = Math.min(columns - 1, to);
+		for(int c=from; c<=to; c++)
+		{
+			for(int r=0; r<rows; r++)
+				refreshCell(r, c);
+		}
+		for(int c=from; c<=to; c++)
+			refreshSummary(c);
+	}
+
+	private void refreshCell(int row, int column)
+	{
+		int bits = 0;
+		if(board.getCell(row, column) == 0)
+		{
+			if(completesLine(row, column, 1))
+				bits |= 1;
+			if(completesLine(row, column, 2))
+				bits |= 2;
+		}
+		threats[column * rows + row] = (byte) bits;
+	}
+
+	private boolean completesLine(int row, int column, int player)
+	{
+		for(int[] direction : DIRECTIONS)
+		{
+			int count = 1 + run(row, column, direction[0], direction[1], player)
+					+ run(row, column, -direction[0], -direction[1], player);
+			if(count >= winNumber)
+				return true;
+		}
+		return false;
+	}
+
+	// Number of the player's pieces next to the cell in the given direction (at most winNumber - 1)
+	private int run(int row, int column, int rowStep, int columnStep, int player)
+	{
+		int count = 0;
+		int r = row + rowStep;
+		int c = column + columnStep;
+		while(count < winNumber - 1 && r >= 0 && r < rows && c >= 0 && c < columns && board.getCell(r, c) == player)
+		{
+			count++;
+			r += rowStep;
+			c += columnStep;
+		}
+		return count;
+	}
+
+	private void refreshSummary(int column)
+	{
+		int height = board.getHeight(column);
+		int newPlayable = (height < rows) ? threats[column * rows + height] : 0;
+		int newStacked = (height + 1 < rows) ? newPlayable & threats[column * rows + height + 1] : 0;
+		for(int player=1; player<=2; player++)
+		{
+			int before = playable[column] & player;
+			int after = newPlayable & player;
+			if(before != after)
+			{
+				playableCount[player] += (after != 0) ? 1 : -1;
+				playableColumnSum[player] += (after != 0) ? column : -column;
+			}
+			if((stacked[column] & player) != (newStacked & player))
+				stackedCount[player] += ((newStacked & player) != 0) ? 1 : -1;
+		}
+		playable[column] = (byte) newPlayable;
+		stacked[column] = (byte) newStacked;
+	}
+}
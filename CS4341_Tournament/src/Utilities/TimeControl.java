@@ -0,0 +1,61 @@
+package Utilities;
+/**
+ * This is a Fischer time control: every player starts the game with the
+ * same time on its clock and gets an increment added after every move it
+ * makes. Time not used on one move can be used on later ones, and a player
+ * whose clock runs out loses (see Referee). Times are in milliseconds.
+ *
+ * Written as "initial+increment" in seconds, e.g. "60+0.5" or "0.2+0.01".
+ */
+
+import java.math.BigDecimal;
+
+public class TimeControl
+{
+	public final long initial, increment; // milliseconds
+
+	public TimeControl(long i, long inc)
+	{
+		if(i <= 0 || inc < 0)
+			throw new IllegalArgumentException("Bad time control: " + i + " ms + " + inc + " ms");
+		initial = i;
+		increment = inc;
+	}
+
+	// Reads a time control written by toString, e.g. "60+0.5"
+	public static TimeControl parse(String s)
+	{
+		String[] parts = s.trim().split("\\+");
+		if(parts.length > 2)
+			throw new IllegalArgumentException("Malformed time control: " + s);
+		long increment = (parts.length == 2) ? Math.round(Double.parseDouble(parts[1]) * 1000) : 0;
+		return new TimeControl(Math.round(Double.parseDouble(parts[0]) * 1000), increment);
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof TimeControl))
+			return false;
+		TimeControl t = (TimeControl) o;
+		return initial == t.initial && increment == t.increment;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Long.hashCode(initial) * 31 + Long.hashCode(increment);
+	}
+
+	@Override
+	public String toString()
+	{
+		return seconds(initial) + "+" + seconds(increment);
+	}
+
+	// Milliseconds as seconds without trailing zeros
+	private static String seconds(long milliseconds)
+	{
+		return BigDecimal.valueOf(milliseconds, 3).stripTrailingZeros().toPlainString();
+	}
+}